@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** A plan for bringing the working directory to a commit: the files to
+ *  write, each with the blob it gets or the code that writes it, and the
+ *  files to delete.  The plan is made from blob ids the caller has
+ *  already resolved, so carrying it out reads no commits.  Deletions are
+ *  done first, one by one, since they may prune directories that writes
+ *  need or free names that writes reuse for directories.  The writes are
+ *  independent and, when there are enough of them, are done on a small
+ *  pool of threads, so that a large checkout waits on the disk rather
+ *  than on one core.  Either way, every write is tried, and the first
+ *  failure in order of path is reported.
+ *  @author Mudabbir Khan
+ */
+class Checkout {
+
+    /** Most threads writing files at once. */
+    static final int THREADS =
+        Math.max(4, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()));
+
+    /** Fewest writes that are worth starting threads for. */
+    private static final int PARALLEL_MIN = 32;
+
+    /** Adds writing blob ID to PATH to the plan. */
+    void write(String path, String id) {
+        _writes.put(WorkTree.path(path), () -> ObjectStore.checkout(id, new File(path)));
+    }
+
+    /** Adds writing PATH to the plan, done by WRITER, which is run along
+     *  with the other writes and so may take time to work out what to
+     *  write. */
+    void write(String path, Runnable writer) {
+        _writes.put(WorkTree.path(path), writer);
+    }
+
+    /** Returns the paths of the files the plan writes. */
+    Set<String> written() {
+        return Collections.unmodifiableSet(_writes.keySet());
+    }
+
+    /** Adds deleting PATH to the plan. */
+    void delete(String path) {
+        _deletes.add(path);
+    }
+
+    /** Carries out the plan. */
+    void run() {
+        for (String path : _deletes) {
+            WorkTree.delete(path);
+        }
+        TreeSet<File> dirs = new TreeSet<>();
+        for (String path : _writes.keySet()) {
+            File parent = new File(path).getParentFile();
+            if (parent != null) {
+                dirs.add(parent);
+            }
+        }
+        for (File dir : dirs) {
+            dir.mkdirs();
+        }
+        RuntimeException failure = _writes.size() < PARALLEL_MIN
+            ? writeSerially() : writeInParallel();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Does every write of the plan in this thread, in order of path.
+     *  Returns the first failure, or null if there was none. */
+    private RuntimeException writeSerially() {
+        RuntimeException failure = null;
+        for (Runnable writer : _writes.values()) {
+            try {
+                writer.run();
+            } catch (RuntimeException excp) {
+                if (failure == null) {
+                    failure = excp;
+                }
+            }
+        }
+        return failure;
+    }
+
+    /** Does every write of the plan on a pool of threads.  Returns the
+     *  first failure in order of path, or null if there was none. */
+    private RuntimeException writeInParallel() {
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(THREADS, _writes.size()));
+        try {
+            List<Future<?>> done = new ArrayList<>(_writes.size());
+            for (Runnable writer : _writes.values()) {
+                done.add(pool.submit(writer));
+            }
+            RuntimeException failure = null;
+            for (Future<?> write : done) {
+                try {
+                    write.get();
+                } catch (ExecutionException excp) {
+                    if (failure == null) {
+                        failure = excp.getCause() instanceof RuntimeException
+                            ? (RuntimeException) excp.getCause()
+                            : Utils.error("%s", excp.getCause());
+                    }
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw Utils.error("Checkout interrupted.");
+                }
+            }
+            return failure;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** The writes of the files to write, keyed by path. */
+    private final TreeMap<String, Runnable> _writes = new TreeMap<>();
+
+    /** Paths of the files to delete. */
+    private final TreeSet<String> _deletes = new TreeSet<>();
+
+}
@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.Random;
+
+/** Content-defined chunking of a stream of bytes.  A Gear rolling hash is
+ *  updated with every byte, and a chunk ends wherever the hash's top bits
+ *  are all zero, so chunk boundaries depend only on the bytes just before
+ *  them.  Inserting or deleting bytes in the middle of a file therefore
+ *  changes only the chunks around the edit; the rest of the file still
+ *  splits into the same chunks as before.  Chunks are between MIN_SIZE
+ *  and MAX_SIZE bytes long, AVERAGE_SIZE on average.
+ *  @author Mudabbir Khan
+ */
+class Chunker {
+
+    /** Smallest file that is split into chunks. */
+    static final long THRESHOLD = 1024 * 1024;
+
+    /** Smallest chunk, except for the last chunk of a file. */
+    static final int MIN_SIZE = 16 * 1024;
+
+    /** Typical chunk size. */
+    static final int AVERAGE_SIZE = 64 * 1024;
+
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Receiver of the chunks of a stream. */
+    interface Sink {
+        /** Accepts the chunk held in the first LENGTH bytes of DATA, which
+         *  is only valid until this call returns. */
+        void chunk(byte[] data, int length) throws IOException;
+    }
+
+    /** A chunker that passes the chunks of the bytes written to it to
+     *  SINK. */
+    Chunker(Sink sink) {
+        _sink = sink;
+    }
+
+    /** Adds the LENGTH bytes of DATA starting at OFFSET to the stream. */
+    void write(byte[] data, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i += 1) {
+            _hash = (_hash << 1) + GEAR[data[i] & 0xff];
+            _chunk[_length] = data[i];
+            _length += 1;
+            if (_length >= MIN_SIZE && (_hash & MASK) == 0
+                || _length == MAX_SIZE) {
+                emit();
+            }
+        }
+    }
+
+    /** Ends the stream, passing on any bytes not yet in a chunk. */
+    void finish() throws IOException {
+        if (_length > 0) {
+            emit();
+        }
+    }
+
+    /** Passes the current chunk to the sink and starts the next. */
+    private void emit() throws IOException {
+        _sink.chunk(_chunk, _length);
+        _length = 0;
+        _hash = 0;
+    }
+
+    /** Bits of the hash that must be zero at a chunk boundary: the top
+     *  bits, which depend on the most bytes, as many as make a boundary
+     *  occur about once every AVERAGE_SIZE bytes. */
+    private static final long MASK =
+        -1L << (Long.SIZE - Integer.numberOfTrailingZeros(AVERAGE_SIZE));
+
+    /** Random value mixed into the hash for each byte value.  The seed is
+     *  fixed so that every repository splits files the same way. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x676c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Receiver of the chunks. */
+    private final Sink _sink;
+
+    /** The bytes of the current chunk. */
+    private final byte[] _chunk = new byte[MAX_SIZE];
+
+    /** Number of bytes in the current chunk. */
+    private int _length;
+
+    /** Rolling hash of the current chunk. */
+    private long _hash;
+
+}
@@ -0,0 +1,71 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of content-defined chunking.
+ *  @author Mudabbir Khan
+ */
+public class ChunkerTest {
+
+    /** Returns the chunks of DATA, fed to a chunker in pieces of
+     *  PIECE bytes. */
+    private static List<byte[]> chunks(byte[] data, int piece)
+        throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        Chunker chunker = new Chunker((chunk, length) ->
+            result.add(Arrays.copyOf(chunk, length)));
+        for (int i = 0; i < data.length; i += piece) {
+            chunker.write(data, i, Math.min(piece, data.length - i));
+        }
+        chunker.finish();
+        return result;
+    }
+
+    @Test
+    public void chunksRebuildTheInput() throws IOException {
+        byte[] data = new byte[3 * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        List<byte[]> result = chunks(data, 10000);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < result.size(); i += 1) {
+            byte[] chunk = result.get(i);
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            assertTrue(i == result.size() - 1
+                       || chunk.length >= Chunker.MIN_SIZE);
+            joined.write(chunk);
+        }
+        assertArrayEquals(data, joined.toByteArray());
+        assertEquals(result.size(), chunks(data, 7).size());
+    }
+
+    @Test
+    public void insertionChangesFewChunks() throws IOException {
+        byte[] data = new byte[4 * 1024 * 1024];
+        new Random(2).nextBytes(data);
+        byte[] edited = new byte[data.length + 100];
+        int at = data.length / 2;
+        System.arraycopy(data, 0, edited, 0, at);
+        System.arraycopy(data, at, edited, at + 100, data.length - at);
+        HashSet<String> before = new HashSet<>();
+        for (byte[] chunk : chunks(data, 4096)) {
+            before.add(Utils.sha1(chunk));
+        }
+        int changed = 0;
+        for (byte[] chunk : chunks(edited, 4096)) {
+            if (!before.contains(Utils.sha1(chunk))) {
+                changed += 1;
+            }
+        }
+        assertTrue(changed <= 2);
+    }
+
+}
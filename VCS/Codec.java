@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/** Compact binary encoding of commits, trees and the Registry header.
+ *  Every encoded object starts with a four-byte magic number, a kind byte
+ *  and a format version byte.  Ids are stored as raw 20-byte hashes,
+ *  times as epoch milliseconds plus a time-zone offset, the files of a
+ *  commit as the id of its root tree, and the entries of a tree as a
+ *  table sorted by name.  Commits of version 1, which held a table of
+ *  all their files instead of a tree, and files written by Java
+ *  serialization in the original format are still readable.
+ *  @author Mudabbir Khan
+ */
+class Codec {
+
+    /** Magic number opening every encoded object ("glet"). */
+    static final int MAGIC = 0x676c6574;
+
+    /** Current format version. */
+    static final int VERSION = 2;
+
+    /** Kind byte of an encoded commit. */
+    static final int COMMIT = 1;
+
+    /** Kind byte of an encoded Registry header. */
+    static final int REGISTRY = 2;
+
+    /** Kind byte of an encoded tree. */
+    static final int TREE = 3;
+
+    /** First format version in which a commit names a root tree. */
+    private static final int TREE_VERSION = 2;
+
+    /** Flag bit set when a commit has a first parent. */
+    private static final int HAS_PARENT = 1;
+
+    /** Flag bit set when a commit has a second parent. */
+    private static final int HAS_MERGED = 2;
+
+    /** First two bytes of a Java serialization stream. */
+    private static final int JAVA_STREAM_MAGIC = 0xaced;
+
+    /** Returns the encoding of commit C. */
+    static byte[] encodeCommit(Commit c) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeHeader(out, COMMIT);
+            out.write(Utils.fromHex(c.getCommitHash()));
+            int flags = (c.getParentId() != null ? HAS_PARENT : 0)
+                | (c.getMergedId() != null ? HAS_MERGED : 0);
+            out.writeByte(flags);
+            if (c.getParentId() != null) {
+                out.write(Utils.fromHex(c.getParentId()));
+            }
+            if (c.getMergedId() != null) {
+                out.write(Utils.fromHex(c.getMergedId()));
+            }
+            out.writeLong(c.getTime());
+            out.writeShort(c.getTimeZoneOffset());
+            writeString(out, c.getMessage());
+            out.write(Utils.fromHex(c.getTreeId()));
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the commit encoded in DATA. */
+    static Commit decodeCommit(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int version = readHeader(buf, COMMIT);
+        String id = readId(buf);
+        int flags = buf.get();
+        String parentId = (flags & HAS_PARENT) != 0 ? readId(buf) : null;
+        String mergedId = (flags & HAS_MERGED) != 0 ? readId(buf) : null;
+        long time = buf.getLong();
+        int tzOffset = buf.getShort();
+        String message = readString(buf);
+        if (version >= TREE_VERSION) {
+            return new Commit(id, parentId, mergedId, message, time,
+                              tzOffset, readId(buf), null);
+        }
+        int n = buf.getInt();
+        HashMap<String, String> blobs = new HashMap<>(2 * n + 1);
+        for (int i = 0; i < n; i += 1) {
+            String name = readString(buf);
+            blobs.put(name, readId(buf));
+        }
+        return new Commit(id, parentId, mergedId, message, time, tzOffset,
+                          null, blobs);
+    }
+
+    /** Returns the encoding of tree T. */
+    static byte[] encodeTree(Tree t) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeHeader(out, TREE);
+            out.writeInt(t.names().size());
+            for (String name : t.names()) {
+                out.writeByte(t.isTree(name) ? Tree.TREE : Tree.BLOB);
+                writeString(out, name);
+                out.write(Utils.fromHex(t.id(name)));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the tree encoded in DATA. */
+    static Tree decodeTree(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        readHeader(buf, TREE);
+        Tree t = new Tree();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i += 1) {
+            int kind = buf.get();
+            String name = readString(buf);
+            t.put(name, kind, readId(buf));
+        }
+        return t;
+    }
+
+    /** Returns the encoding of a Registry header whose HEAD is the current
+     *  commit and whose CURRENTBRANCH is the current branch. */
+    static byte[] encodeRegistry(String head, String currentBranch) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeHeader(out, REGISTRY);
+            out.write(Utils.fromHex(head));
+            writeString(out, currentBranch);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing repository.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the {head, current branch} pair encoded in DATA. */
+    static String[] decodeRegistry(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        readHeader(buf, REGISTRY);
+        String head = readId(buf);
+        return new String[] { head, readString(buf) };
+    }
+
+    /** Returns true iff DATA was written by Java serialization rather
+     *  than by this codec. */
+    static boolean isLegacy(byte[] data) {
+        return data.length >= 2
+            && ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == JAVA_STREAM_MAGIC;
+    }
+
+    /** Returns the commit encoded in DATA, in either format. */
+    static Commit readCommit(byte[] data) {
+        if (isLegacy(data)) {
+            return Utils.deserialize(data, Commit.class);
+        }
+        return decodeCommit(data);
+    }
+
+    /** Writes the magic number, KIND and version to OUT. */
+    private static void writeHeader(DataOutputStream out, int kind)
+        throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(kind);
+        out.writeByte(VERSION);
+    }
+
+    /** Checks that BUF starts with the header of an object of kind KIND in
+     *  a version this codec understands, and returns that version. */
+    private static int readHeader(ByteBuffer buf, int kind) {
+        if (buf.remaining() < 6 || buf.getInt() != MAGIC) {
+            throw Utils.error("Corrupt gitlet object.");
+        }
+        int actualKind = buf.get();
+        int version = buf.get();
+        if (actualKind != kind) {
+            throw Utils.error("Unexpected gitlet object kind %d.", actualKind);
+        }
+        if (version > VERSION) {
+            throw Utils.error("Unsupported gitlet format version %d.",
+                              version);
+        }
+        return version;
+    }
+
+    /** Writes S to OUT as a length-prefixed UTF-8 string. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns the length-prefixed UTF-8 string at BUF's position. */
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(),
+                              length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    /** Returns the raw id at BUF's position as a hexadecimal numeral. */
+    private static String readId(ByteBuffer buf) {
+        String id = Utils.toHex(buf.array(), buf.arrayOffset() + buf.position());
+        buf.position(buf.position() + Utils.UID_BYTES);
+        return id;
+    }
+
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Tests of the binary encoding of commits, trees and headers.
+ *  @author Mudabbir Khan
+ */
+public class CodecTest {
+
+    /** Returns a 40-digit id made of the digit D. */
+    private static String id(char d) {
+        return new String(new char[Utils.UID_LENGTH]).replace('\0', d);
+    }
+
+    @Test
+    public void commitRoundTrip() {
+        Commit c = new Commit(id('1'), id('2'), id('3'), "Merged other.",
+                              1234567890123L, -480, id('a'), null);
+        Commit d = Codec.decodeCommit(Codec.encodeCommit(c));
+        assertEquals(c.getCommitHash(), d.getCommitHash());
+        assertEquals(c.getParentId(), d.getParentId());
+        assertEquals(c.getMergedId(), d.getMergedId());
+        assertEquals(c.getMessage(), d.getMessage());
+        assertEquals(c.getTime(), d.getTime());
+        assertEquals(c.getDateString(), d.getDateString());
+        assertEquals(id('a'), d.getTreeId());
+    }
+
+    @Test
+    public void initialCommitHasNoParents() {
+        Commit c = new Commit(id('4'), null, null, "initial commit", 0, 0,
+                              id('5'), null);
+        Commit d = Codec.decodeCommit(Codec.encodeCommit(c));
+        assertNull(d.getParentId());
+        assertNull(d.getMergedId());
+        assertEquals("Thu Jan 1 00:00:00 1970 +0000", d.getDateString());
+    }
+
+    @Test
+    public void readsCommitWithFileTable() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Codec.MAGIC);
+        out.writeByte(Codec.COMMIT);
+        out.writeByte(1);
+        out.write(Utils.fromHex(id('6')));
+        out.writeByte(0);
+        out.writeLong(0);
+        out.writeShort(0);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt("wug.txt".length());
+        out.write("wug.txt".getBytes(StandardCharsets.UTF_8));
+        out.write(Utils.fromHex(id('a')));
+        Commit d = Codec.decodeCommit(bytes.toByteArray());
+        assertFalse(d.hasTree());
+        HashMap<String, String> blobs = new HashMap<>();
+        blobs.put("wug.txt", id('a'));
+        assertEquals(blobs, d.getBlobs());
+    }
+
+    @Test
+    public void treeRoundTrip() {
+        Tree t = new Tree();
+        t.put("wug.txt", Tree.BLOB, id('a'));
+        t.put("src", Tree.TREE, id('b'));
+        t.put("notwug.txt", Tree.BLOB, id('c'));
+        Tree u = Codec.decodeTree(Codec.encodeTree(t));
+        assertEquals(Arrays.asList("notwug.txt", "src", "wug.txt"),
+                     new ArrayList<>(u.names()));
+        assertTrue(u.isTree("src"));
+        assertFalse(u.isTree("wug.txt"));
+        assertEquals(id('b'), u.id("src"));
+        assertEquals(id('c'), u.id("notwug.txt"));
+        assertArrayEquals(Codec.encodeTree(t), Codec.encodeTree(u));
+    }
+
+    @Test
+    public void registryRoundTrip() {
+        String[] header =
+            Codec.decodeRegistry(Codec.encodeRegistry(id('f'), "master"));
+        assertEquals(id('f'), header[0]);
+        assertEquals("master", header[1]);
+        assertFalse(Codec.isLegacy(Codec.encodeRegistry(id('f'), "x")));
+    }
+
+}
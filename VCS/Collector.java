@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/** The mark phase of garbage collection: finds every object reachable
+ *  from a set of roots.  Each line of first parents is walked in a loop,
+ *  while the second parents of merges and the trees of each commit are
+ *  marked by tasks forked onto a ForkJoinPool, so that separate lines of
+ *  history and the trees of many commits are read in parallel.  A tree
+ *  already marked is not read again, so the directories that commits
+ *  share are only walked once.
+ *  @author Mudabbir Khan
+ */
+class Collector {
+
+    /** Returns the ids of the commits COMMITS and all their ancestors, of
+     *  the trees and blobs those commits track, of the blobs BLOBS, and of
+     *  the chunks of all those blobs. */
+    static Set<String> mark(Collection<String> commits,
+                            Collection<String> blobs) {
+        Set<String> live = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                    for (String id : commits) {
+                        tasks.add(new MarkHistory(id, live).fork());
+                    }
+                    tasks.add(new MarkBlobs(blobs, live).fork());
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.join();
+                    }
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        return live;
+    }
+
+    /** Marks a commit and its ancestors. */
+    private static class MarkHistory extends RecursiveAction {
+
+        /** Marks, in LIVE, the commit with id START and its ancestors. */
+        MarkHistory(String start, Set<String> live) {
+            _start = start;
+            _live = live;
+        }
+
+        @Override
+        protected void compute() {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            String id = _start;
+            while (id != null && _live.add(id)) {
+                byte[] data = ObjectStore.readCommit(id);
+                if (data == null) {
+                    throw Utils.error("Missing commit %s.", id);
+                }
+                Commit c = Codec.readCommit(data);
+                if (c.hasTree()) {
+                    tasks.add(new MarkTree(c.getTreeId(), _live).fork());
+                } else {
+                    tasks.add(new MarkBlobs(c.getBlobs().values(), _live)
+                              .fork());
+                }
+                if (c.getMergedId() != null) {
+                    tasks.add(new MarkHistory(c.getMergedId(), _live).fork());
+                }
+                id = c.getParentId();
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+
+        /** The first commit to mark. */
+        private final String _start;
+
+        /** Ids of the objects marked so far. */
+        private final Set<String> _live;
+    }
+
+    /** Marks a tree and everything below it. */
+    private static class MarkTree extends RecursiveAction {
+
+        /** Marks, in LIVE, the tree with id ID, its subtrees, and their
+         *  blobs and chunks. */
+        MarkTree(String id, Set<String> live) {
+            _id = id;
+            _live = live;
+        }
+
+        @Override
+        protected void compute() {
+            if (!_live.add(_id)) {
+                return;
+            }
+            Tree tree = Tree.read(_id);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            List<String> blobs = new ArrayList<>();
+            for (String name : tree.names()) {
+                if (tree.isTree(name)) {
+                    tasks.add(new MarkTree(tree.id(name), _live).fork());
+                } else {
+                    blobs.add(tree.id(name));
+                }
+            }
+            new MarkBlobs(blobs, _live).compute();
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+
+        /** Id of the tree to mark. */
+        private final String _id;
+
+        /** Ids of the objects marked so far. */
+        private final Set<String> _live;
+    }
+
+    /** Marks some blobs and their chunks. */
+    private static class MarkBlobs extends RecursiveAction {
+
+        /** Marks, in LIVE, the blobs IDS and their chunks. */
+        MarkBlobs(Collection<String> ids, Set<String> live) {
+            _ids = ids;
+            _live = live;
+        }
+
+        @Override
+        protected void compute() {
+            for (String id : _ids) {
+                if (_live.add(id)) {
+                    _live.addAll(ObjectStore.chunkIds(id));
+                }
+            }
+        }
+
+        /** Ids of the blobs to mark. */
+        private final Collection<String> _ids;
+
+        /** Ids of the objects marked so far. */
+        private final Set<String> _live;
+    }
+
+}
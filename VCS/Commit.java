@@ -1,62 +1,95 @@
 package gitlet;
 
-/** The commit class that handles the data of all the commit objects. 
+/** The commit class that handles the data of all the commit objects.
 *   @author Mudabbr Khan
 */
 
-import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.text.Format;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
 
 public class Commit implements Serializable {
 
-    private Commit _merged;
-
-    public Commit getMerged() {
-        return _merged;
+    /** Returns the id of the second parent of a merge commit, or null. */
+    public String getMergedId() {
+        return _mergedId;
     }
 
+    /** A commit with MESSAGE whose first parent is PARENT and whose second
+     *  parent is MERGED.  Parents are remembered by id only, so loading a
+     *  commit never drags in the rest of the history. */
     public Commit(Commit parent, String message, Commit merged) {
-        _parent = parent;
+        _parentId = parent == null ? null : parent.getCommitHash();
         _message = message;
-        _merged = merged;
+        _mergedId = merged == null ? null : merged.getCommitHash();
 
-        Format dateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
         if (parent == null) {
-            date = new Date(0);
-            dateString = dateFormat.format(date);
+            _time = 0;
         } else {
-            date = new Date();
-            dateString = dateFormat.format(date);
+            _time = System.currentTimeMillis();
         }
+        _tzOffset = TimeZone.getDefault().getOffset(_time) / MILLIS_PER_MINUTE;
         blobs = new HashMap<>();
-        blobNames = new ArrayList<>();
-        blobContent = new HashMap<>();
+    }
+
+    /** A commit read back from the repository, with id ID, parents PARENTID
+     *  and MERGEDID, MESSAGE, made at TIME milliseconds after the epoch
+     *  in a time zone TZOFFSET minutes east of UTC, and tracking the files
+     *  below the root tree with id TREE or, for a commit from before
+     *  trees, the files BLOBS. */
+    Commit(String id, String parentId, String mergedId, String message,
+           long time, int tzOffset, String tree,
+           HashMap<String, String> blobs) {
+        iD = id;
+        _parentId = parentId;
+        _mergedId = mergedId;
+        _message = message;
+        _time = time;
+        _tzOffset = tzOffset;
+        _tree = tree;
+        this.blobs = blobs;
     }
 
     public String getBlobHash(String fileName) {
-        return blobs.get(fileName);
+        return getBlobs().get(fileName);
     }
 
+    /** Returns the commit date formatted for log output. */
     public String getDateString() {
-        return dateString;
+        ZoneOffset zone = ZoneOffset.ofTotalSeconds(_tzOffset * 60);
+        return DATE_FORMAT.format(Instant.ofEpochMilli(_time).atOffset(zone));
+    }
+
+    /** Returns the commit time in milliseconds since the epoch. */
+    public long getTime() {
+        return _time;
     }
 
-    public Date getDate() {
-        return date;
+    /** Returns the offset of the committer's time zone, in minutes east
+     *  of UTC. */
+    public int getTimeZoneOffset() {
+        return _tzOffset;
     }
 
     public String getMessage() {
         return _message;
     }
 
-    public Commit getParent() {
-        return _parent;
+    /** Returns the id of the first parent, or null for the initial
+     *  commit. */
+    public String getParentId() {
+        return _parentId;
     }
 
     /** Sets the ID for commit. */
@@ -71,95 +104,145 @@ public class Commit implements Serializable {
 
     /** Creates and returns unique hashing value for commit. */
     public String createCommitHash() {
-        String hash = "commit " + _parent + " " + _message + " " + dateString;
-        StringBuilder result = new StringBuilder(hash);
-        for (String s : blobs.values()) {
-            result.append(" ");
-            result.append(s);
-        }
-        return result.toString();
-    }
-
-    public String BlobHash(String fileName) {
-        String hash = "blob " + fileName + " " + blobContent.get(fileName);
-        return Utils.sha1(hash);
-    }
-
-    /** Adds all parent's files to tracking. */
-    public void addParentBlobs() {
-        blobNames.addAll(_parent.blobNames);
-        blobContent.putAll(_parent.blobContent);
-        blobs.putAll(_parent.blobs);
-    }
-
-    public void stageFiles() {
-        File stageDir = new File(".gitlet" + File.separator + "staged");
-        List<String> stageFileNames = Utils.plainFilenamesIn(stageDir);
-        if (stageFileNames != null) {
-            for (String file : stageFileNames) {
-                File stageFile = new File(".gitlet" + File.separator + "staged" + File.separator + file);
-                String readFile = Utils.readContentsAsString(stageFile);
-                blobContent.put(file, readFile);
-                String blobHash = BlobHash(file);
-                blobs.put(file, blobHash);
-                blobNames.add(file);
-                stageFile.delete();
-            }
+        return "commit " + _parentId + " " + _message + " "
+            + getDateString() + " " + getTreeId();
+    }
+
+    /** Returns the id of the root tree of the commit's files, first
+     *  storing the trees of a commit from before trees. */
+    public String getTreeId() {
+        if (_tree == null) {
+            _tree = Tree.write(blobs);
         }
+        return _tree;
     }
 
-    public void removeFiles() {
-        File removeDir = new File(".gitlet" + File.separator + "removed");
-        List<String> removeFileNames = Utils.plainFilenamesIn(removeDir);
-        if (removeFileNames != null) {
-            for (String file : removeFileNames) {
-                File removeFile = new File(".gitlet" + File.separator + "removed" + File.separator + file);
-                blobContent.remove(file);
-                blobs.remove(file);
-                blobNames.remove(file);
-                removeFile.delete();
-            }
+    /** Returns true iff the commit names its root tree, rather than being
+     *  from before trees. */
+    boolean hasTree() {
+        return _tree != null;
+    }
+
+    /** Returns the hash identifying the version of FILENAME whose
+     *  contents are CONTENTS. */
+    public static String BlobHash(String fileName, byte[] contents) {
+        return Utils.sha1("blob " + fileName + " ", contents);
+    }
+
+    /** Returns a SHA-1 digester primed for hashing the contents of a
+     *  version of FILENAME, so that the contents can be fed to it piece
+     *  by piece.  Its digest agrees with BlobHash. */
+    static MessageDigest blobDigest(String fileName) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(("blob " + fileName + " ")
+                      .getBytes(StandardCharsets.UTF_8));
+            return md;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
-    /** Returns the content from file using FILENAME. */
-    public String getContent(String fileName) {
-        return blobContent.get(fileName);
+    /** Tracks exactly the files of INDEX that are not staged for
+     *  removal, in their staged versions.  PARENT is the head commit,
+     *  whose trees are reused for the directories with nothing staged. */
+    public void trackIndex(Index index, Commit parent) {
+        blobs = index.tracked();
+        _tree = Tree.write(index, parent.getTreeId());
     }
 
-    public HashMap<String, String> getBlobContent() {
-        return blobContent;
+    /** Returns the content from file using FILENAME, read from the object
+     *  store, or null if FILENAME is not tracked. */
+    public String getContent(String fileName) {
+        String id = getBlobs().get(fileName);
+        if (id == null) {
+            return null;
+        }
+        return ObjectStore.readBlobAsString(id);
     }
 
-    public List<String> getBlobNames() {
-        return blobNames;
+    /** Returns the names of all tracked files. */
+    public Set<String> getBlobNames() {
+        return getBlobs().keySet();
     }
 
+    /** Returns the blob ids of all tracked files, keyed by path, reading
+     *  them from the commit's trees on first use. */
     public HashMap<String, String> getBlobs() {
+        if (blobs == null) {
+            blobs = Tree.files(_tree);
+        }
         return blobs;
     }
 
-    /** Previous commit. */
-    private Commit _parent;
+    /** Returns the file contents carried inline by a commit read from a
+     *  repository written before the object store existed, or null. */
+    Map<String, String> getLegacyContents() {
+        return _legacyContents;
+    }
+
+    /** Reads a commit written by Java serialization in the original
+     *  format, in which parents were object references, the date was a
+     *  Date plus its formatted string, and contents were held inline.
+     *  Reads from IN. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Commit parent = (Commit) fields.get("_parent", null);
+        Commit merged = (Commit) fields.get("_merged", null);
+        _parentId = parent == null ? null : parent.iD;
+        _mergedId = merged == null ? null : merged.iD;
+        _message = (String) fields.get("_message", null);
+        iD = (String) fields.get("iD", null);
+        blobs = (HashMap<String, String>) fields.get("blobs", null);
+        _legacyContents =
+            (HashMap<String, String>) fields.get("blobContent", null);
+        Date date = (Date) fields.get("date", null);
+        String dateString = (String) fields.get("dateString", null);
+        _time = date.getTime();
+        String zone = dateString.substring(dateString.lastIndexOf(' ') + 1);
+        int minutes = Integer.parseInt(zone.substring(1, 3)) * 60
+            + Integer.parseInt(zone.substring(3, 5));
+        _tzOffset = zone.charAt(0) == '-' ? -minutes : minutes;
+    }
+
+    /** Serial version of the original serialized format. */
+    private static final long serialVersionUID = 5408715967860773715L;
+
+    /** Format of dates in log output. */
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
+
+    /** Milliseconds in a minute. */
+    private static final int MILLIS_PER_MINUTE = 60 * 1000;
+
+    /** Id of the previous commit. */
+    private String _parentId;
+
+    /** Id of the merged-in commit, for merge commits. */
+    private String _mergedId;
 
     /** Commit message. */
     private String _message;
 
-    /** Maps file names to their respective hash values. */
+    /** Maps file names to their respective hash values, or null if not
+     *  read from the commit's trees yet. */
     private HashMap<String, String> blobs;
 
-    /** List of all the file names. */
-    private List<String> blobNames;
-
-    /** Maps file name to its content. */
-    private HashMap<String, String> blobContent;
+    /** Id of the root tree, or null for a commit from before trees whose
+     *  trees have not been stored. */
+    private String _tree;
 
     /** Commit's hash value. */
     private String iD;
 
-    /** Commit date. */
-    private Date date;
+    /** Commit time, in milliseconds since the epoch. */
+    private long _time;
+
+    /** Offset of the committer's time zone from UTC, in minutes. */
+    private int _tzOffset;
 
-    /** String representation of the commit date. */
-    private String dateString;
+    /** Inline file contents of a commit in the original format. */
+    private transient HashMap<String, String> _legacyContents;
 }
@@ -0,0 +1,588 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The commit graph: the shape of the history, kept apart from the
+ *  commits themselves in .gitlet/commit-graph so that it can be walked
+ *  without reading any commit.  The file holds a header, a 256-entry
+ *  fan-out table on the first byte of the ids, and one fixed-width row
+ *  per commit in id order: the 20-byte id, the row numbers of the first
+ *  and second parents (or NONE), the commit's generation and its time.
+ *  The generation of a commit without parents is 1, and that of any other
+ *  commit is one more than the largest generation of its parents, so an
+ *  ancestor always has a smaller generation than its descendants.  Since
+ *  version 2, the rows are followed by a PathFilter for each commit of
+ *  the paths it changed relative to its first parent, files and the
+ *  directories holding them: first the end offset of each row's filter,
+ *  then the filters themselves.  The file is memory mapped, and rows are
+ *  found by binary search.
+ *
+ *  New commits do not rewrite that file.  They go into layers stacked
+ *  on it, files of the same format named in .gitlet/commit-graph-chain,
+ *  whose rows are numbered after those of the layers below them, so that
+ *  a parent may be in any layer up to its child's.  A layer is merged
+ *  with the one below it when that one is not MERGE_FACTOR times larger,
+ *  which keeps the layers few, and the cost of adding a commit
+ *  independent of the length of the history but for a logarithmic
+ *  factor.  Each CommitGraph is one layer, along with those below it.
+ *  @author Mudabbir Khan
+ */
+class CommitGraph {
+
+    /** File holding the graph. */
+    static final File GRAPH_FILE = Utils.join(".gitlet", "commit-graph");
+
+    /** File naming the layers stacked on GRAPH_FILE, from the bottom up,
+     *  one per line along with the number of rows below it. */
+    static final File CHAIN_FILE = Utils.join(".gitlet",
+                                              "commit-graph-chain");
+
+    /** Prefix of the names of the layer files. */
+    private static final String LAYER_PREFIX = "commit-graph-";
+
+    /** Row number standing for a missing parent. */
+    static final int NONE = -1;
+
+    /** Magic number opening the file ("CGPH"). */
+    private static final int MAGIC = 0x43475048;
+
+    /** Current format version. */
+    private static final int VERSION = 2;
+
+    /** First format version with path filters. */
+    private static final int FILTERS_VERSION = 2;
+
+    /** Size of the header in bytes. */
+    private static final int HEADER = 12;
+
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+
+    /** Size of a row in bytes. */
+    private static final int ROW = Utils.UID_BYTES + 4 + 4 + 4 + 8;
+
+    /** Least ratio of the size of a layer to that of the one above it. */
+    private static final int MERGE_FACTOR = 2;
+
+    /** The layer mapped from FILE, stacked on the graph BELOW, or on
+     *  nothing if it is null. */
+    private CommitGraph(File file, CommitGraph below) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+        _version = _data.getInt(4);
+        if (_data.getInt(0) != MAGIC || _version > VERSION) {
+            throw Utils.error("Corrupt commit graph.");
+        }
+        _count = _data.getInt(8);
+        _rowsStart = HEADER + 4 * FANOUT;
+        _filtersStart = _rowsStart + _count * ROW + 4 * _count;
+        _file = file;
+        _below = below;
+        _base = below == null ? 0 : below.size();
+    }
+
+    /** Returns the commit graph, after adding to it every commit that is
+     *  reachable from the commits TIPS and that it does not hold yet.
+     *  Only the commits being added are read, along with their first
+     *  parents for their path filters, except that a graph without path
+     *  filters has them computed for all its commits. */
+    static CommitGraph update(Collection<String> tips) {
+        CommitGraph old = load();
+        HashMap<String, String[]> parents = new HashMap<>();
+        HashMap<String, Long> times = new HashMap<>();
+        HashMap<String, byte[]> filters = new HashMap<>();
+        ArrayDeque<String> work = new ArrayDeque<>(tips);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (parents.containsKey(id) || old != null && old.find(id) != NONE) {
+                continue;
+            }
+            Commit c = read(id);
+            parents.put(id, new String[] { c.getParentId(), c.getMergedId() });
+            times.put(id, c.getTime());
+            filters.put(id, PathFilter.build(changedPaths(c)));
+            for (String parent : parents.get(id)) {
+                if (parent != null) {
+                    work.push(parent);
+                }
+            }
+        }
+        if (old != null && parents.isEmpty() && old.hasFilters()) {
+            return old;
+        }
+        List<File> merged = new ArrayList<>();
+        CommitGraph below = old;
+        while (below != null && (!below.hasFilters()
+                                  || below._count
+                                     < MERGE_FACTOR * parents.size())) {
+            below.collect(parents, times, filters);
+            merged.add(below._file);
+            below = below._below;
+        }
+        CommitGraph result = write(below, parents, times, filters);
+        for (File file : merged) {
+            if (!file.equals(GRAPH_FILE) && !file.equals(result._file)) {
+                file.delete();
+            }
+        }
+        return result;
+    }
+
+    /** Deletes the commit graph, with all its layers. */
+    static void clear() {
+        CHAIN_FILE.delete();
+        GRAPH_FILE.delete();
+        for (String name : Utils.plainFilenamesIn(".gitlet")) {
+            if (name.startsWith(LAYER_PREFIX)) {
+                Utils.join(".gitlet", name).delete();
+            }
+        }
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return _base + _count;
+    }
+
+    /** Returns the row of the commit with id ID, or NONE if the graph does
+     *  not hold it. */
+    int find(String id) {
+        byte[] raw = Utils.fromHex(id);
+        for (CommitGraph layer = this; layer != null; layer = layer._below) {
+            int row = layer.findHere(raw);
+            if (row != NONE) {
+                return layer._base + row;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the row in this layer, counted from its first, of the
+     *  commit whose id is RAW, or NONE if the layer does not hold it. */
+    private int findHere(byte[] raw) {
+        int first = raw[0] & 0xff;
+        int lo = first == 0 ? 0 : _data.getInt(HEADER + 4 * (first - 1));
+        int hi = _data.getInt(HEADER + 4 * first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, raw);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the id of the commit in ROW. */
+    String idAt(int row) {
+        if (row < _base) {
+            return _below.idAt(row);
+        }
+        byte[] id = new byte[Utils.UID_BYTES];
+        ByteBuffer rows = _data.duplicate();
+        rows.position(rowStart(row));
+        rows.get(id);
+        return Utils.toHex(id, 0);
+    }
+
+    /** Returns the row of the first parent of the commit in ROW, or
+     *  NONE. */
+    int parent(int row) {
+        if (row < _base) {
+            return _below.parent(row);
+        }
+        return _data.getInt(rowStart(row) + Utils.UID_BYTES);
+    }
+
+    /** Returns the row of the second parent of the commit in ROW, or
+     *  NONE. */
+    int merged(int row) {
+        if (row < _base) {
+            return _below.merged(row);
+        }
+        return _data.getInt(rowStart(row) + Utils.UID_BYTES + 4);
+    }
+
+    /** Returns the generation of the commit in ROW. */
+    int generation(int row) {
+        if (row < _base) {
+            return _below.generation(row);
+        }
+        return _data.getInt(rowStart(row) + Utils.UID_BYTES + 8);
+    }
+
+    /** Returns the time of the commit in ROW. */
+    long time(int row) {
+        if (row < _base) {
+            return _below.time(row);
+        }
+        return _data.getLong(rowStart(row) + Utils.UID_BYTES + 12);
+    }
+
+    /** Returns true iff the graph holds path filters, in all its
+     *  layers. */
+    boolean hasFilters() {
+        return _version >= FILTERS_VERSION
+            && (_below == null || _below.hasFilters());
+    }
+
+    /** Returns false if the commit in ROW certainly did not change PATH,
+     *  a file or directory, relative to its first parent, and true if it
+     *  may have. */
+    boolean mayChange(int row, String path) {
+        if (row < _base) {
+            return _below.mayChange(row, path);
+        } else if (_version < FILTERS_VERSION) {
+            return true;
+        }
+        row -= _base;
+        int start = filterStart(row);
+        return PathFilter.mayContain(_data, _filtersStart + start,
+                                     filterEnd(row) - start, path);
+    }
+
+    /** Returns the paths of the files that commit C changed relative to
+     *  its first parent, and of the directories holding them. */
+    static Set<String> changedPaths(Commit c) {
+        String base = c.getParentId() == null ? null
+            : read(c.getParentId()).getTreeId();
+        Set<String> result = new HashSet<>();
+        Tree.diff(base, c.getTreeId(), (path, oldId, newId) -> {
+            result.add(path);
+            for (int k = path.lastIndexOf('/'); k > 0;
+                 k = path.lastIndexOf('/', k - 1)) {
+                result.add(path.substring(0, k));
+            }
+        });
+        return result;
+    }
+
+    /** Returns true iff the commit with id ANCESTOR is DESCENDANT or one
+     *  of its ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        return isAncestor(row(ancestor), row(descendant));
+    }
+
+    /** Returns true iff the commit in row A is the commit in row B or one
+     *  of its ancestors.  Parents whose generation is below A's cannot
+     *  lead to A, so the search never enters them. */
+    boolean isAncestor(int a, int b) {
+        int target = generation(a);
+        BitSet seen = new BitSet(size());
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(b);
+        seen.set(b);
+        while (!work.isEmpty()) {
+            int row = work.pop();
+            if (row == a) {
+                return true;
+            }
+            for (int next : new int[] { parent(row), merged(row) }) {
+                if (next != NONE && !seen.get(next)
+                    && generation(next) >= target) {
+                    seen.set(next);
+                    work.push(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the row of the commit with id ID, which must be in the
+     *  graph. */
+    int row(String id) {
+        int row = find(id);
+        if (row == NONE) {
+            throw Utils.error("Commit %s is not in the commit graph.", id);
+        }
+        return row;
+    }
+
+    /** Returns the commit with id ID. */
+    private static Commit read(String id) {
+        byte[] data = ObjectStore.readCommit(id);
+        if (data == null) {
+            throw Utils.error("Missing commit %s.", id);
+        }
+        return Codec.readCommit(data);
+    }
+
+    /** Returns the graph stored in GRAPH_FILE and the layers named by
+     *  CHAIN_FILE, or null if there is none.  A layer whose rows would not
+     *  follow those below it, as after the graph was rewritten without it,
+     *  is ignored, with those above it. */
+    private static CommitGraph load() {
+        if (!GRAPH_FILE.isFile()) {
+            return null;
+        }
+        CommitGraph result = new CommitGraph(GRAPH_FILE, null);
+        if (!CHAIN_FILE.isFile()) {
+            return result;
+        }
+        for (String line
+                 : Utils.readContentsAsString(CHAIN_FILE).split("\n")) {
+            String[] fields = line.split(" ");
+            if (fields.length != 2
+                || !fields[1].equals(Integer.toString(result.size()))) {
+                break;
+            }
+            File file = Utils.join(".gitlet", fields[0]);
+            if (!file.isFile()) {
+                break;
+            }
+            result = new CommitGraph(file, result);
+        }
+        return result;
+    }
+
+    /** Adds the parents' ids, time and path filter of each commit of this
+     *  layer to PARENTS, TIMES and FILTERS.  The path filters of a layer
+     *  without any are computed. */
+    private void collect(HashMap<String, String[]> parents,
+                         HashMap<String, Long> times,
+                         HashMap<String, byte[]> filters) {
+        for (int r = _base; r < size(); r += 1) {
+            String id = idAt(r);
+            int p = parent(r), m = merged(r);
+            parents.put(id, new String[] {
+                p == NONE ? null : idAt(p),
+                m == NONE ? null : idAt(m) });
+            times.put(id, time(r));
+            filters.put(id, _version >= FILTERS_VERSION ? filter(r)
+                        : PathFilter.build(changedPaths(read(id))));
+        }
+    }
+
+    /** Returns the path filter of the commit in ROW. */
+    private byte[] filter(int row) {
+        row -= _base;
+        int start = filterStart(row);
+        byte[] result = new byte[filterEnd(row) - start];
+        ByteBuffer filters = _data.duplicate();
+        filters.position(_filtersStart + start);
+        filters.get(result);
+        return result;
+    }
+
+    /** Returns the offset of the filter of ROW, counted from the first of
+     *  this layer, among the filters. */
+    private int filterStart(int row) {
+        return row == 0 ? 0 : filterEnd(row - 1);
+    }
+
+    /** Returns the offset of the end of the filter of ROW, counted from
+     *  the first of this layer, among the filters. */
+    private int filterEnd(int row) {
+        return _data.getInt(_rowsStart + _count * ROW + 4 * row);
+    }
+
+    /** Returns the offset in the file of ROW, which is in this layer. */
+    private int rowStart(int row) {
+        return _rowsStart + (row - _base) * ROW;
+    }
+
+    /** Compares the id in ROW, counted from the first of this layer, with
+     *  ID, as unsigned bytes. */
+    private int compareId(int row, byte[] id) {
+        int base = _rowsStart + row * ROW;
+        for (int i = 0; i < Utils.UID_BYTES; i += 1) {
+            int cmp = (_data.get(base + i) & 0xff) - (id[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Writes a layer of the commits whose parents' ids are given by
+     *  PARENTS, whose times are given by TIMES, and whose path filters are
+     *  given by FILTERS, stacked on BELOW, and returns the resulting graph.
+     *  Without BELOW, the layer replaces GRAPH_FILE, and CHAIN_FILE is
+     *  emptied first, so that a reader never finds stale layers on it.
+     *  Otherwise, it goes to a file of its own, and CHAIN_FILE is rewritten
+     *  to end with it.  Both files are replaced atomically. */
+    private static CommitGraph write(CommitGraph below,
+                                     HashMap<String, String[]> parents,
+                                     HashMap<String, Long> times,
+                                     HashMap<String, byte[]> filters) {
+        List<String> ids = new ArrayList<>(parents.keySet());
+        Collections.sort(ids);
+        int base = below == null ? 0 : below.size();
+        HashMap<String, Integer> rows = new HashMap<>(2 * ids.size() + 1);
+        for (int r = 0; r < ids.size(); r += 1) {
+            rows.put(ids.get(r), base + r);
+        }
+        if (below != null) {
+            for (String[] p : parents.values()) {
+                for (String parent : p) {
+                    if (parent != null && !rows.containsKey(parent)) {
+                        rows.put(parent, below.find(parent));
+                    }
+                }
+            }
+        }
+        int[] generations = generations(ids, rows, parents, below);
+        File file = below == null ? GRAPH_FILE
+            : Utils.join(".gitlet",
+                         LAYER_PREFIX + Utils.sha1(new ArrayList<>(ids)));
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            int[] fanout = new int[FANOUT];
+            for (String id : ids) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+            }
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (int r = 0; r < ids.size(); r += 1) {
+                String id = ids.get(r);
+                String[] p = parents.get(id);
+                out.write(Utils.fromHex(id));
+                out.writeInt(p[0] == null ? NONE : rows.get(p[0]));
+                out.writeInt(p[1] == null ? NONE : rows.get(p[1]));
+                out.writeInt(generations[r]);
+                out.writeLong(times.get(id));
+            }
+            int end = 0;
+            for (String id : ids) {
+                end += filters.get(id).length;
+                out.writeInt(end);
+            }
+            for (String id : ids) {
+                out.write(filters.get(id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit graph: %s",
+                              excp.getMessage());
+        }
+        if (below == null) {
+            CHAIN_FILE.delete();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit graph: %s",
+                              excp.getMessage());
+        }
+        CommitGraph result = new CommitGraph(file, below);
+        if (below != null) {
+            List<String> chain = new ArrayList<>();
+            for (CommitGraph layer = result; layer._below != null;
+                 layer = layer._below) {
+                chain.add(0, layer._file.getName() + " " + layer._base
+                          + "\n");
+            }
+            Utils.writeContentsAtomically(CHAIN_FILE, String.join("", chain));
+        }
+        return result;
+    }
+
+    /** Returns the generation of each of the commits IDS, indexed like
+     *  IDS, where ROWS gives the row of each of them and of their parents,
+     *  those of IDS following the rows of BELOW, and PARENTS the ids of
+     *  each commit's parents.  Parents outside IDS are in BELOW. */
+    private static int[] generations(List<String> ids,
+                                     HashMap<String, Integer> rows,
+                                     HashMap<String, String[]> parents,
+                                     CommitGraph below) {
+        int base = below == null ? 0 : below.size();
+        int[] result = new int[ids.size()];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        for (int start = 0; start < ids.size(); start += 1) {
+            work.push(start);
+            while (!work.isEmpty()) {
+                int r = work.peek();
+                if (result[r] != 0) {
+                    work.pop();
+                    continue;
+                }
+                int generation = 1;
+                boolean ready = true;
+                for (String parent : parents.get(ids.get(r))) {
+                    if (parent == null) {
+                        continue;
+                    }
+                    Integer p = rows.get(parent);
+                    if (p == null || p == NONE) {
+                        throw Utils.error("Missing commit %s.", parent);
+                    } else if (p < base) {
+                        generation = Math.max(generation,
+                                              below.generation(p) + 1);
+                    } else if (result[p - base] == 0) {
+                        work.push(p - base);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation,
+                                              result[p - base] + 1);
+                    }
+                }
+                if (ready) {
+                    result[r] = generation;
+                    work.pop();
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The mapped file. */
+    private final MappedByteBuffer _data;
+
+    /** The file holding this layer. */
+    private final File _file;
+
+    /** The layers below this one, or null. */
+    private final CommitGraph _below;
+
+    /** Number of rows in the layers below this one. */
+    private final int _base;
+
+    /** Number of commits in this layer. */
+    private final int _count;
+
+    /** Offset in the file of the first row. */
+    private final int _rowsStart;
+
+    /** Offset in the file of the first path filter. */
+    private final int _filtersStart;
+
+    /** Format version of the file. */
+    private final int _version;
+
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+/** Per-repository settings, kept as KEY=VALUE lines in .gitlet/config.
+ *  @author Mudabbir Khan
+ */
+class Config {
+
+    /** File holding the settings. */
+    static final File CONFIG = Utils.join(".gitlet", "config");
+
+    /** Key of the zlib compression level of stored objects, from 0 (store
+     *  uncompressed) to 9. */
+    static final String COMPRESSION = "core.compression";
+
+    /** Key of whether large files are split into content-defined chunks
+     *  (true or false). */
+    static final String CHUNKING = "core.chunking";
+
+    /** Key of the number of seconds gc leaves new unreachable objects,
+     *  loose or in new packs, alone. */
+    static final String GRACE_PERIOD = "gc.gracePeriod";
+
+    /** Default of GRACE_PERIOD: one hour. */
+    private static final int DEFAULT_GRACE_PERIOD = 60 * 60;
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not set. */
+    static String get(String key, String defaultValue) {
+        return settings().getProperty(key, defaultValue);
+    }
+
+    /** Returns the integer value of KEY, which must lie between MIN and
+     *  MAX inclusive, or DEFAULTVALUE if it is not set. */
+    static int getInt(String key, int defaultValue, int min, int max) {
+        String value = settings().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return parseInt(key, value, min, max);
+    }
+
+    /** Sets KEY, which must be one of the keys above, to VALUE, which must
+     *  be a valid value for it, and saves the settings. */
+    static void set(String key, String value) {
+        value = value.trim();
+        switch (key) {
+        case COMPRESSION:
+            parseInt(key, value, Deflater.DEFAULT_COMPRESSION,
+                     Deflater.BEST_COMPRESSION);
+            break;
+        case CHUNKING:
+            if (!value.equalsIgnoreCase("true")
+                && !value.equalsIgnoreCase("false")) {
+                throw Utils.error("Bad value for %s: %s", key, value);
+            }
+            break;
+        case GRACE_PERIOD:
+            parseInt(key, value, 0, Integer.MAX_VALUE);
+            break;
+        default:
+            throw Utils.error("Unknown setting: %s", key);
+        }
+        Properties props = settings();
+        props.setProperty(key, value);
+        try (OutputStream out = Files.newOutputStream(CONFIG.toPath())) {
+            props.store(out, null);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", CONFIG);
+        }
+    }
+
+    /** Prints every setting, in order of key. */
+    static void list() {
+        Properties props = settings();
+        for (String key : new TreeSet<>(props.stringPropertyNames())) {
+            System.out.println(key + "=" + props.getProperty(key));
+        }
+    }
+
+    /** Returns the compression level for stored objects. */
+    static int compressionLevel() {
+        return getInt(COMPRESSION, Deflater.DEFAULT_COMPRESSION,
+                      Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION);
+    }
+
+    /** Returns true iff large files are to be stored as chunks. */
+    static boolean chunking() {
+        return Boolean.parseBoolean(get(CHUNKING, "false").trim());
+    }
+
+    /** Returns gc's grace period in milliseconds. */
+    static long gracePeriod() {
+        return getInt(GRACE_PERIOD, DEFAULT_GRACE_PERIOD, 0,
+                      Integer.MAX_VALUE) * 1000L;
+    }
+
+    /** Returns VALUE, the value of KEY, as an integer, which must lie
+     *  between MIN and MAX inclusive. */
+    private static int parseInt(String key, String value, int min, int max) {
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= min && result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw Utils.error("Bad value for %s: %s", key, value);
+    }
+
+    /** Forgets the settings read, if the file holding them has changed
+     *  since, so that a long-running process sees edits made by others. */
+    static void refresh() {
+        if (_settings != null && stamp() != _stamp) {
+            _settings = null;
+        }
+    }
+
+    /** Returns the modification time of CONFIG, or 0 if there is none. */
+    private static long stamp() {
+        return CONFIG.lastModified();
+    }
+
+    /** Returns the settings, reading them on first use. */
+    private static Properties settings() {
+        if (_settings == null) {
+            _stamp = stamp();
+            _settings = new Properties();
+            if (CONFIG.isFile()) {
+                try (InputStream in = Files.newInputStream(CONFIG.toPath())) {
+                    _settings.load(in);
+                } catch (IOException excp) {
+                    throw Utils.error("Cannot read %s.", CONFIG);
+                }
+            }
+        }
+        return _settings;
+    }
+
+    /** The settings, or null if not read yet. */
+    private static Properties _settings;
+
+    /** Modification time of CONFIG when the settings were read. */
+    private static long _stamp;
+
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/** The repository daemon: a long-running process that serves the
+ *  commands of one repository over the Unix domain socket
+ *  .gitlet/daemon.sock, so that they pay for starting the JVM, and for
+ *  reading commits and the index, only once.  Commands are run one at a
+ *  time, with the standard output sent back to the client, and the
+ *  commit cache and index stay in memory between them.  The settings
+ *  and the list of packs, which other processes may change, are checked
+ *  against their files before each command.  A request is the number of
+ *  arguments followed by the arguments as modified UTF-8 strings; the
+ *  reply is the command's output, ended by closing the connection.  When
+ *  no daemon answers, commands run in their own process as usual.
+ *  @author Mudabbir Khan
+ */
+class Daemon {
+
+    /** Socket on which the daemon listens. */
+    static final File SOCKET = Utils.join(".gitlet", "daemon.sock");
+
+    /** Serves commands on SOCKET until asked to stop. */
+    static void serve() throws IOException {
+        if (SOCKET.exists()) {
+            SocketChannel probe = connect();
+            if (probe != null) {
+                probe.close();
+                throw Utils.error("A daemon is already running.");
+            }
+        }
+        Files.deleteIfExists(SOCKET.toPath());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            SOCKET.deleteOnExit();
+            PrintStream console = System.out;
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel client = server.accept()) {
+                    stop = handle(client, console);
+                } catch (EOFException excp) {
+                    /* A client that hung up before sending a command. */
+                }
+            }
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Has the daemon, if one is running, carry out the command ARGS,
+     *  copying its output to the standard output.  Returns false if no
+     *  daemon accepted the command, so that it must be run here. */
+    static boolean forward(String... args) {
+        if (args.length == 0 || args[0].equals("watch")
+            || args.length == 1 && args[0].equals("daemon")
+            || !SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException excp) {
+            System.out.println("Lost connection to daemon: "
+                               + excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Returns a connection to the running daemon, or null if none
+     *  answers. */
+    private static SocketChannel connect() {
+        try {
+            return SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Reads a command from CLIENT, runs it with its output going back to
+     *  CLIENT, and restores CONSOLE as the standard output.  Returns true
+     *  iff the command was to stop the daemon. */
+    private static boolean handle(SocketChannel client, PrintStream console)
+        throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        boolean stop = args.length == 2 && args[0].equals("daemon")
+            && args[1].equals("stop");
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)),
+            false, StandardCharsets.UTF_8);
+        System.setOut(out);
+        try {
+            if (stop) {
+                System.out.println("Daemon stopped.");
+            } else {
+                Config.refresh();
+                ObjectStore.refresh();
+                Main.execute(args);
+            }
+        } catch (RuntimeException excp) {
+            System.out.println("Internal error: " + excp);
+        } finally {
+            out.flush();
+            System.setOut(console);
+        }
+        return stop;
+    }
+
+}
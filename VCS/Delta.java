@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Copy/insert deltas between two versions of a file.  A delta starts
+ *  with the lengths of the base and of the result, followed by a sequence
+ *  of instructions: COPY (offset, length) copies a run of bytes from the
+ *  base, and INSERT (length, bytes) supplies bytes that do not occur in
+ *  the base.  All numbers are unsigned variable-length integers, seven
+ *  bits per byte, least significant group first.
+ *  @author Mudabbir Khan
+ */
+class Delta {
+
+    /** Instruction copying bytes from the base. */
+    private static final int COPY = 1;
+
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNumber(out, base.length);
+        writeNumber(out, target.length);
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer candidate = index.get(hash(target, i));
+            if (candidate == null
+                || !matches(base, candidate, target, i, BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = candidate;
+            int length = BLOCK;
+            while (start + length < base.length && i + length < target.length
+                   && base[start + length] == target[i + length]) {
+                length += 1;
+            }
+            while (start > 0 && i > pending
+                   && base[start - 1] == target[i - 1]) {
+                start -= 1;
+                i -= 1;
+                length += 1;
+            }
+            writeInsert(out, target, pending, i);
+            out.write(COPY);
+            writeNumber(out, start);
+            writeNumber(out, length);
+            i += length;
+            pending = i;
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        long baseLength = readNumber(delta, pos);
+        if (baseLength != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[(int) readNumber(delta, pos)];
+        int out = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = (int) readNumber(delta, pos);
+                int length = (int) readNumber(delta, pos);
+                System.arraycopy(base, offset, result, out, length);
+                out += length;
+            } else {
+                int length = (int) readNumber(delta, pos);
+                System.arraycopy(delta, pos[0], result, out, length);
+                pos[0] += length;
+                out += length;
+            }
+        }
+        if (out != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Writes an instruction inserting TARGET[START .. END) to OUT, if that
+     *  range is not empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int start, int end) {
+        if (start < end) {
+            out.write(INSERT);
+            writeNumber(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Returns true iff the LENGTH bytes at A[I] equal those at B[J]. */
+    private static boolean matches(byte[] a, int i, byte[] b, int j,
+                                   int length) {
+        for (int k = 0; k < length; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+
+    /** Writes the non-negative number N to OUT as a variable-length
+     *  integer. */
+    static void writeNumber(ByteArrayOutputStream out, long n) {
+        while (n >= 0x80) {
+            out.write((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /** Returns the variable-length integer at DATA[POS[0]], advancing
+     *  POS[0] past it. */
+    static long readNumber(byte[] data, int[] pos) {
+        long n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            n |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return n;
+    }
+
+}
@@ -0,0 +1,50 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+/** Tests of copy/insert deltas.
+ *  @author Mudabbir Khan
+ */
+public class DeltaTest {
+
+    /** Returns a file of N numbered lines. */
+    private static String lines(int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append("setting.").append(i).append(" = value ").append(i)
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Checks that a delta from BASE rebuilds TARGET, and returns it. */
+    private static byte[] roundTrip(String base, String target) {
+        byte[] b = base.getBytes(StandardCharsets.UTF_8);
+        byte[] t = target.getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.create(b, t);
+        assertArrayEquals(t, Delta.apply(b, delta));
+        return delta;
+    }
+
+    @Test
+    public void smallEditGivesSmallDelta() {
+        String base = lines(2000);
+        String target = base.replace("setting.1000 = value 1000",
+                                     "setting.1000 = changed");
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 100);
+    }
+
+    @Test
+    public void insertionsAndDeletions() {
+        String base = lines(500);
+        roundTrip(base, "header\n" + base.substring(300) + "trailer\n");
+        roundTrip(base, "");
+        roundTrip("", base);
+        roundTrip("short", "also short");
+    }
+
+}
@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line differences between two texts, found with Myers' O(ND)
+ *  algorithm in its linear-space form: the middle snake of the edit
+ *  graph splits each problem in two, so the only working storage is the
+ *  two diagonal vectors of the current split and one flag per line.
+ *  Lines are compared as small integers, each distinct line being
+ *  numbered once.  The differences can be written as a unified diff.
+ *  @author Mudabbir Khan
+ */
+class Diff {
+
+    /** A maximal run of changed lines: lines [aLo, aHi) of the first text
+     *  are replaced by lines [bLo, bHi) of the second.  An insertion has
+     *  an empty first range and a deletion an empty second one. */
+    static class Hunk {
+
+        /** A hunk replacing lines [ALO, AHI) by lines [BLO, BHI). */
+        Hunk(int aLo, int aHi, int bLo, int bHi) {
+            _aLo = aLo;
+            _aHi = aHi;
+            _bLo = bLo;
+            _bHi = bHi;
+        }
+
+        /** Returns the first changed line of the first text. */
+        int aLo() {
+            return _aLo;
+        }
+
+        /** Returns the line of the first text after the change. */
+        int aHi() {
+            return _aHi;
+        }
+
+        /** Returns the first changed line of the second text. */
+        int bLo() {
+            return _bLo;
+        }
+
+        /** Returns the line of the second text after the change. */
+        int bHi() {
+            return _bHi;
+        }
+
+        /** First changed line of the first text. */
+        private final int _aLo;
+
+        /** Line of the first text after the change. */
+        private final int _aHi;
+
+        /** First changed line of the second text. */
+        private final int _bLo;
+
+        /** Line of the second text after the change. */
+        private final int _bHi;
+    }
+
+    /** Returns the lines of TEXT, each with its terminating newline, if
+     *  any; only the last line can lack one. */
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Returns the hunks, in order, that turn the lines A into the lines
+     *  B. */
+    static List<Hunk> diff(List<String> a, List<String> b) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        Diff d = new Diff(number(a, numbers), number(b, numbers));
+        d.compare(0, d._a.length, 0, d._b.length);
+        return d.hunks();
+    }
+
+    /** Writes to OUT the differences between the versions A and B of the
+     *  file PATH as a unified diff with CONTEXT lines of context around
+     *  each change.  A or B is null if the file is absent on that side.
+     *  Each group of changes is written as soon as it is complete. */
+    static void unified(String path, String a, String b, int context,
+                        PrintWriter out) {
+        List<String> x = a == null ? List.of() : lines(a);
+        List<String> y = b == null ? List.of() : lines(b);
+        List<Hunk> hunks = diff(x, y);
+        if (hunks.isEmpty()) {
+            return;
+        }
+        out.print("diff --git a/" + path + " b/" + path + "\n");
+        if (a == null) {
+            out.print("new file\n");
+        } else if (b == null) {
+            out.print("deleted file\n");
+        }
+        out.print("--- " + (a == null ? "/dev/null" : "a/" + path) + "\n");
+        out.print("+++ " + (b == null ? "/dev/null" : "b/" + path) + "\n");
+        int first = 0;
+        for (int k = 1; k <= hunks.size(); k += 1) {
+            if (k == hunks.size()
+                || hunks.get(k).aLo() - hunks.get(k - 1).aHi() > 2 * context) {
+                group(x, y, hunks.subList(first, k), context, out);
+                first = k;
+            }
+        }
+    }
+
+    /** Writes to OUT one group of HUNKS turning lines X into lines Y,
+     *  with CONTEXT lines of context on either side. */
+    private static void group(List<String> x, List<String> y,
+                              List<Hunk> hunks, int context,
+                              PrintWriter out) {
+        Hunk first = hunks.get(0), last = hunks.get(hunks.size() - 1);
+        int aLo = Math.max(0, first.aLo() - context);
+        int bLo = first.bLo() - (first.aLo() - aLo);
+        int aHi = Math.min(x.size(), last.aHi() + context);
+        int bHi = last.bHi() + (aHi - last.aHi());
+        out.print("@@ -" + range(aLo, aHi) + " +" + range(bLo, bHi)
+                  + " @@\n");
+        int pos = aLo;
+        for (Hunk h : hunks) {
+            lines(' ', x, pos, h.aLo(), out);
+            lines('-', x, h.aLo(), h.aHi(), out);
+            lines('+', y, h.bLo(), h.bHi(), out);
+            pos = h.aHi();
+        }
+        lines(' ', x, pos, aHi, out);
+    }
+
+    /** Returns the unified diff notation for lines [LO, HI). */
+    private static String range(int lo, int hi) {
+        if (hi - lo == 1) {
+            return Integer.toString(hi);
+        }
+        return (hi == lo ? lo : lo + 1) + "," + (hi - lo);
+    }
+
+    /** Writes to OUT LINES[LO .. HI), each preceded by PREFIX. */
+    private static void lines(char prefix, List<String> lines, int lo,
+                              int hi, PrintWriter out) {
+        for (int k = lo; k < hi; k += 1) {
+            String line = lines.get(k);
+            out.print(prefix);
+            out.print(line);
+            if (!line.endsWith("\n")) {
+                out.print("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** A comparison of the numbered lines A and B. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _aChanged = new boolean[a.length];
+        _bChanged = new boolean[b.length];
+        int size = a.length + b.length + 4;
+        _forward = new int[size];
+        _backward = new int[size];
+    }
+
+    /** Returns the numbers of LINES, numbering new lines in NUMBERS. */
+    private static int[] number(List<String> lines,
+                                HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer n = numbers.putIfAbsent(lines.get(i), numbers.size());
+            result[i] = n == null ? numbers.size() - 1 : n;
+        }
+        return result;
+    }
+
+    /** Marks the changed lines between _a[ALO .. AHI) and
+     *  _b[BLO .. BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                _bChanged[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                _aChanged[i] = true;
+            }
+        } else {
+            long split = middle(aLo, aHi, bLo, bHi);
+            if (split < 0) {
+                for (int i = aLo; i < aHi; i += 1) {
+                    _aChanged[i] = true;
+                }
+                for (int j = bLo; j < bHi; j += 1) {
+                    _bChanged[j] = true;
+                }
+                return;
+            }
+            int x = (int) (split >>> 32), y = (int) split;
+            compare(aLo, x, bLo, y);
+            compare(x, aHi, y, bHi);
+        }
+    }
+
+    /** Returns the point (X, Y), packed as X << 32 | Y, at which a
+     *  shortest edit script from _a[ALO .. AHI) to _b[BLO .. BHI) crosses
+     *  the middle of the edit graph, or -1 if the ranges have no line in
+     *  common.  Both ranges are non-empty. */
+    private long middle(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD + 1;
+        int[] vf = _forward, vb = _backward;
+        for (int i = 0; i <= 2 * maxD + 2; i += 1) {
+            vf[i] = -1;
+            vb[i] = -1;
+        }
+        vf[offset + 1] = 0;
+        vb[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int fStart = 0, fEnd = 0, bStart = 0, bEnd = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                int x = k == -d || k != d && vf[offset + k - 1]
+                        < vf[offset + k + 1]
+                    ? vf[offset + k + 1] : vf[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[offset + k] = x;
+                if (x > n) {
+                    fEnd += 2;
+                } else if (y > m) {
+                    fStart += 2;
+                } else if (front) {
+                    int kb = offset + delta - k;
+                    if (kb >= 0 && kb <= 2 * maxD + 2 && vb[kb] != -1
+                        && x >= n - vb[kb]) {
+                        return (long) (aLo + x) << 32 | (bLo + y);
+                    }
+                }
+            }
+            for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                int x = k == -d || k != d && vb[offset + k - 1]
+                        < vb[offset + k + 1]
+                    ? vb[offset + k + 1] : vb[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m
+                       && _a[aHi - x - 1] == _b[bHi - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[offset + k] = x;
+                if (x > n) {
+                    bEnd += 2;
+                } else if (y > m) {
+                    bStart += 2;
+                } else if (!front) {
+                    int kf = offset + delta - k;
+                    if (kf >= 0 && kf <= 2 * maxD + 2 && vf[kf] != -1) {
+                        int fx = vf[kf];
+                        int fy = fx - (kf - offset);
+                        if (fx >= n - x) {
+                            return (long) (aLo + fx) << 32 | (bLo + fy);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the runs of changed lines as hunks. */
+    private List<Hunk> hunks() {
+        List<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _a.length || j < _b.length) {
+            if (i < _a.length && !_aChanged[i]
+                && j < _b.length && !_bChanged[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aLo = i, bLo = j;
+            while (i < _a.length && _aChanged[i]) {
+                i += 1;
+            }
+            while (j < _b.length && _bChanged[j]) {
+                j += 1;
+            }
+            result.add(new Hunk(aLo, i, bLo, j));
+        }
+        return result;
+    }
+
+    /** The numbered lines of the first text. */
+    private final int[] _a;
+
+    /** The numbered lines of the second text. */
+    private final int[] _b;
+
+    /** Flags of the changed lines of the first text. */
+    private final boolean[] _aChanged;
+
+    /** Flags of the changed lines of the second text. */
+    private final boolean[] _bChanged;
+
+    /** The furthest reaching forward path on each diagonal of the current
+     *  split. */
+    private final int[] _forward;
+
+    /** The furthest reaching backward path on each diagonal of the
+     *  current split. */
+    private final int[] _backward;
+
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of line differences.
+ *  @author Mudabbir Khan
+ */
+public class DiffTest {
+
+    /** Returns N random lines drawn from an alphabet of K lines. */
+    private static List<String> random(Random rand, int n, int k) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add("line " + rand.nextInt(k) + "\n");
+        }
+        return result;
+    }
+
+    /** Returns the length of the longest common subsequence of A and B. */
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] best = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i -= 1) {
+            for (int j = b.size() - 1; j >= 0; j -= 1) {
+                best[i][j] = a.get(i).equals(b.get(j)) ? best[i + 1][j + 1] + 1
+                    : Math.max(best[i + 1][j], best[i][j + 1]);
+            }
+        }
+        return best[0][0];
+    }
+
+    /** Checks that HUNKS turn A into B, changing as few lines as
+     *  possible. */
+    private static void check(List<String> a, List<String> b,
+                              List<Diff.Hunk> hunks) {
+        List<String> result = new ArrayList<>();
+        int pos = 0, changed = 0;
+        for (Diff.Hunk h : hunks) {
+            assertTrue(h.aLo() >= pos);
+            assertEquals(h.aLo() - pos, h.bLo() - result.size());
+            result.addAll(a.subList(pos, h.aLo()));
+            result.addAll(b.subList(h.bLo(), h.bHi()));
+            changed += h.aHi() - h.aLo() + h.bHi() - h.bLo();
+            pos = h.aHi();
+        }
+        result.addAll(a.subList(pos, a.size()));
+        assertEquals(b, result);
+        assertEquals(a.size() + b.size() - 2 * lcs(a, b), changed);
+    }
+
+    @Test
+    public void randomTextsAreDiffedMinimally() {
+        Random rand = new Random(61);
+        for (int t = 0; t < 300; t += 1) {
+            List<String> a = random(rand, rand.nextInt(40), 1 + t % 8);
+            List<String> b = random(rand, rand.nextInt(40), 1 + t % 8);
+            check(a, b, Diff.diff(a, b));
+        }
+    }
+
+    @Test
+    public void singleEdit() {
+        List<String> a = Diff.lines("a\nb\nc\nd\n");
+        List<String> b = Diff.lines("a\nB\nc\nd\ne");
+        List<Diff.Hunk> hunks = Diff.diff(a, b);
+        assertEquals(2, hunks.size());
+        check(a, b, hunks);
+    }
+
+}
@@ -0,0 +1,457 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The staging index: one entry per file that the next commit will
+ *  track, plus the files staged for removal, kept sorted by path in the
+ *  single binary file .gitlet/index.  An entry records the file's blob
+ *  id, mode, size and modification time as they were when it was last
+ *  staged or checked out, and flags telling whether it is staged for
+ *  addition or for removal.  The index is read once per command and
+ *  replaced atomically when saved.  A repository from before the index
+ *  existed gets one built from its head commit and its old staged and
+ *  removed directories.  A process that runs many commands, such as the
+ *  daemon, keeps the last entries it read or wrote and skips decoding the
+ *  file while it is unchanged.
+ *  @author Mudabbir Khan
+ */
+class Index {
+
+    /** File holding the index. */
+    static final File INDEX_FILE = Utils.join(".gitlet", "index");
+
+    /** Flag of an entry whose blob differs from the head commit's. */
+    static final int STAGED = 1;
+
+    /** Flag of an entry staged for removal. */
+    static final int REMOVED = 2;
+
+    /** Mode of an ordinary file. */
+    static final int REGULAR = 0100644;
+
+    /** Mode of an executable file. */
+    static final int EXECUTABLE = 0100755;
+
+    /** How close, in milliseconds, a file's modification time may come to
+     *  the time the index was written before the recorded time no longer
+     *  proves that the file is unchanged: the file might have changed
+     *  again within the same tick of the file system's clock. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** Magic number opening the index file ("GIDX"). */
+    private static final int MAGIC = 0x47494458;
+
+    /** Current format version. */
+    private static final int VERSION = 1;
+
+    /** Directory of staged files used before the index. */
+    private static final File LEGACY_STAGED = Utils.join(".gitlet", "staged");
+
+    /** Directory of removed files used before the index. */
+    private static final File LEGACY_REMOVED =
+        Utils.join(".gitlet", "removed");
+
+    /** One file in the index. */
+    static class Entry {
+
+        /** An entry for PATH with blob ID, MODE, SIZE, MTIME and FLAGS. */
+        Entry(String path, String id, int mode, long size, long mtime,
+              int flags) {
+            _path = path;
+            _id = id;
+            _mode = mode;
+            _size = size;
+            _mtime = mtime;
+            _flags = flags;
+        }
+
+        /** Returns the file's path. */
+        String path() {
+            return _path;
+        }
+
+        /** Returns the id of the file's blob. */
+        String id() {
+            return _id;
+        }
+
+        /** Returns the file's mode. */
+        int mode() {
+            return _mode;
+        }
+
+        /** Returns the file's size when last staged or checked out, or 0
+         *  if unknown. */
+        long size() {
+            return _size;
+        }
+
+        /** Returns the file's modification time when last staged or
+         *  checked out, in milliseconds, or 0 if unknown. */
+        long mtime() {
+            return _mtime;
+        }
+
+        /** Returns the entry's flags. */
+        int flags() {
+            return _flags;
+        }
+
+        /** Returns true iff the file is staged for addition. */
+        boolean isStaged() {
+            return (_flags & STAGED) != 0;
+        }
+
+        /** Returns true iff the file is staged for removal. */
+        boolean isRemoved() {
+            return (_flags & REMOVED) != 0;
+        }
+
+        /** The file's path. */
+        private final String _path;
+
+        /** Id of the file's blob. */
+        private final String _id;
+
+        /** The file's mode. */
+        private final int _mode;
+
+        /** The file's size. */
+        private final long _size;
+
+        /** The file's modification time. */
+        private final long _mtime;
+
+        /** The entry's flags. */
+        private final int _flags;
+    }
+
+    /** Returns the index of the repository whose head commit is HEAD. */
+    static Index load(Commit head) {
+        Index index = new Index();
+        if (INDEX_FILE.isFile()) {
+            Object stamp = stamp();
+            index._timestamp = INDEX_FILE.lastModified();
+            if (_kept != null && stamp != null && stamp.equals(_keptStamp)) {
+                index._entries = new TreeMap<>(_kept);
+            } else {
+                index.decode(Utils.readContents(INDEX_FILE));
+                keep(index, stamp);
+            }
+            return index;
+        }
+        for (Map.Entry<String, String> file : head.getBlobs().entrySet()) {
+            index.put(new Entry(file.getKey(), file.getValue(), REGULAR,
+                                0, 0, 0));
+        }
+        List<String> staged = Utils.plainFilenamesIn(LEGACY_STAGED);
+        if (staged != null) {
+            for (String name : staged) {
+                File entry = Utils.join(LEGACY_STAGED, name);
+                index.stage(name, legacyBlob(name, entry), new File(name));
+            }
+        }
+        List<String> removed = Utils.plainFilenamesIn(LEGACY_REMOVED);
+        if (removed != null) {
+            for (String name : removed) {
+                String id = head.getBlobHash(name);
+                if (id != null) {
+                    index.markRemoved(name, id);
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Returns the entry for PATH, or null if there is none. */
+    Entry get(String path) {
+        return _entries.get(path);
+    }
+
+    /** Returns all entries, in order of path. */
+    Collection<Entry> entries() {
+        return _entries.values();
+    }
+
+    /** Returns all entries, keyed by path. */
+    NavigableMap<String, Entry> entryMap() {
+        return Collections.unmodifiableNavigableMap(_entries);
+    }
+
+    /** Returns true iff any file is staged for addition or removal. */
+    boolean hasChanges() {
+        for (Entry entry : _entries.values()) {
+            if (entry.flags() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the paths of the files staged for addition, in order. */
+    List<String> staged() {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : _entries.values()) {
+            if (entry.isStaged()) {
+                result.add(entry.path());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the paths of the files staged for removal, in order. */
+    List<String> removed() {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : _entries.values()) {
+            if (entry.isRemoved()) {
+                result.add(entry.path());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the blob ids of the files the next commit will track,
+     *  keyed by path. */
+    HashMap<String, String> tracked() {
+        HashMap<String, String> result = new HashMap<>(2 * _entries.size() + 1);
+        for (Entry entry : _entries.values()) {
+            if (!entry.isRemoved()) {
+                result.put(entry.path(), entry.id());
+            }
+        }
+        return result;
+    }
+
+    /** Stages blob ID as the new version of PATH, whose working copy is
+     *  FILE. */
+    void stage(String path, String id, File file) {
+        _touched.add(path);
+        put(entryFor(path, id, file, STAGED));
+    }
+
+    /** Records that PATH, whose working copy is FILE, is back to the
+     *  version ID in the head commit, with nothing staged. */
+    void unstage(String path, String id, File file) {
+        _touched.add(path);
+        put(entryFor(path, id, file, 0));
+    }
+
+    /** Returns true iff ENTRY's recorded size and time cannot be trusted
+     *  to show that its file is unchanged: they are unknown, or the file
+     *  was modified too close to when the index was written. */
+    boolean isRacy(Entry entry) {
+        return entry.mtime() == 0
+            || entry.mtime() >= _timestamp - RACY_WINDOW;
+    }
+
+    /** Records that the working copy of PATH, found to match its entry,
+     *  now has size SIZE and modification time MTIME. */
+    void refresh(String path, long size, long mtime) {
+        Entry entry = _entries.get(path);
+        put(new Entry(path, entry.id(), entry.mode(), size, mtime,
+                      entry.flags()));
+    }
+
+    /** Stages PATH, whose blob in the head commit is ID, for removal. */
+    void markRemoved(String path, String id) {
+        _touched.add(path);
+        put(new Entry(path, id, REGULAR, 0, 0, REMOVED));
+    }
+
+    /** Drops PATH from the index. */
+    void forget(String path) {
+        _touched.add(path);
+        _entries.remove(path);
+    }
+
+    /** Makes the index match commit C, with nothing staged.  The files in
+     *  WRITTEN have just been checked out from C; every other file of C
+     *  was already in place, unchanged since its entry was recorded, so
+     *  that entry is kept if it has the same blob and nothing staged. */
+    void reset(Commit c, Set<String> written) {
+        TreeMap<String, Entry> old = _entries;
+        _entries = new TreeMap<>();
+        for (Map.Entry<String, String> file : c.getBlobs().entrySet()) {
+            Entry previous = old.remove(file.getKey());
+            if (previous == null || previous.flags() != 0
+                || !previous.id().equals(file.getValue())) {
+                _touched.add(file.getKey());
+            } else if (!written.contains(file.getKey())) {
+                put(previous);
+                continue;
+            }
+            put(entryFor(file.getKey(), file.getValue(),
+                         new File(file.getKey()), 0));
+        }
+        _touched.addAll(old.keySet());
+    }
+
+    /** Records that the staged changes have been committed. */
+    void committed() {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (Entry entry : _entries.values()) {
+            if (!entry.isRemoved()) {
+                entries.put(entry.path(), new Entry(entry.path(), entry.id(),
+                    entry.mode(), entry.size(), entry.mtime(), 0));
+            }
+        }
+        _entries = entries;
+    }
+
+    /** Writes the index to INDEX_FILE, replacing it atomically, tells any
+     *  watcher which entries changed, and removes any staging directories
+     *  of the old format. */
+    void save() {
+        Utils.writeContentsAtomically(INDEX_FILE, encode());
+        _timestamp = INDEX_FILE.lastModified();
+        keep(this, stamp());
+        Watcher.touched(_touched);
+        _touched.clear();
+        for (File dir : new File[] { LEGACY_STAGED, LEGACY_REMOVED }) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    Utils.join(dir, name).delete();
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    /** Returns what identifies the current contents of INDEX_FILE: its
+     *  file key, size and modification time, or null if they cannot be
+     *  read.  The index is always replaced by renaming a new file over it,
+     *  so a new version has a new file key as well as a new time. */
+    private static Object stamp() {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                INDEX_FILE.toPath(), BasicFileAttributes.class);
+            if (attrs.fileKey() == null) {
+                return null;
+            }
+            return List.of(attrs.fileKey(), attrs.size(),
+                           attrs.lastModifiedTime());
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Remembers the entries of INDEX, just read or written, as those of
+     *  the index file with stamp STAMP, so that a later command run in
+     *  the same process need not decode the file again. */
+    private static void keep(Index index, Object stamp) {
+        _kept = stamp == null ? null : new TreeMap<>(index._entries);
+        _keptStamp = stamp;
+    }
+
+    /** Returns an entry for PATH with blob ID and FLAGS, taking the mode,
+     *  size and modification time from its working copy FILE. */
+    private static Entry entryFor(String path, String id, File file,
+                                  int flags) {
+        if (!file.isFile()) {
+            return new Entry(path, id, REGULAR, 0, 0, flags);
+        }
+        return new Entry(path, id, file.canExecute() ? EXECUTABLE : REGULAR,
+                         file.length(), file.lastModified(), flags);
+    }
+
+    /** Returns the id of the blob staged for NAME in the old staging
+     *  directory entry FILE, which holds either that id or, in the oldest
+     *  format, the staged contents themselves, which are stored now. */
+    private static String legacyBlob(String name, File file) {
+        byte[] entry = Utils.readContents(file);
+        if (entry.length == Utils.UID_LENGTH) {
+            String id = new String(entry, StandardCharsets.UTF_8);
+            if (id.matches("[0-9a-f]+") && ObjectStore.contains(id)) {
+                return id;
+            }
+        }
+        return ObjectStore.writeBlob(name, file);
+    }
+
+    /** Adds or replaces ENTRY. */
+    private void put(Entry entry) {
+        _entries.put(entry.path(), entry);
+    }
+
+    /** Returns the encoding of the index. */
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Entry entry : _entries.values()) {
+                byte[] path = entry.path().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(path.length);
+                out.write(path);
+                out.write(Utils.fromHex(entry.id()));
+                out.writeInt(entry.mode());
+                out.writeLong(entry.size());
+                out.writeLong(entry.mtime());
+                out.writeByte(entry.flags());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing index.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Reads the entries encoded in DATA. */
+    private void decode(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (data.length < 12 || buf.getInt() != MAGIC) {
+            throw Utils.error("Corrupt index.");
+        } else if (buf.getInt() > VERSION) {
+            throw Utils.error("Unsupported index version.");
+        }
+        int n = buf.getInt();
+        for (int i = 0; i < n; i += 1) {
+            int length = buf.getShort() & 0xffff;
+            String path = new String(data, buf.position(), length,
+                                     StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            String id = Utils.toHex(data, buf.position());
+            buf.position(buf.position() + Utils.UID_BYTES);
+            int mode = buf.getInt();
+            long size = buf.getLong();
+            long mtime = buf.getLong();
+            int flags = buf.get();
+            put(new Entry(path, id, mode, size, mtime, flags));
+        }
+    }
+
+    /** Copy of the entries last read from or written to INDEX_FILE by
+     *  this process, or null. */
+    private static TreeMap<String, Entry> _kept;
+
+    /** Stamp of INDEX_FILE when _kept matched it. */
+    private static Object _keptStamp;
+
+    /** Modification time of the index file when read, or 0. */
+    private long _timestamp;
+
+    /** Paths whose entries changed since the index was read or saved. */
+    private final HashSet<String> _touched = new HashSet<>();
+
+    /** The entries, keyed by path. */
+    private TreeMap<String, Entry> _entries = new TreeMap<>();
+
+}
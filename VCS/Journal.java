@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Append-only write-ahead journal of changes to the Registry header.
+ *  Each record is framed as a length, a CRC-32 of the payload and the
+ *  payload itself, which is a list of fields separated by NUL characters.
+ *  A record torn by a crash fails its length or checksum test and is
+ *  discarded, together with anything after it, on the next replay.
+ *  @author Mudabbir Khan
+ */
+class Journal {
+
+    /** Journal receiving new records. */
+    static final File JOURNAL = Utils.join(".gitlet", "journal");
+
+    /** Journal being folded into the checkpoint by a compaction. */
+    static final File ROTATED = Utils.join(".gitlet", "journal.old");
+
+    /** Size in bytes past which the journal is compacted. */
+    static final long COMPACT_THRESHOLD = 64 * 1024;
+
+    /** Bytes of framing in front of each payload. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Field separator within a payload. */
+    private static final char SEPARATOR = '\0';
+
+    /** Appends a record made of FIELDS to the journal and forces it to
+     *  disk before returning. */
+    static void append(String... fields) {
+        byte[] payload = String.join(String.valueOf(SEPARATOR), fields)
+            .getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing journal.");
+        }
+        try (FileChannel channel = FileChannel.open(JOURNAL.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing journal.");
+        }
+    }
+
+    /** Returns the intact records of the journal FILE, in the order they
+     *  were appended.  A torn tail is cut off the file. */
+    static List<String[]> read(File file) {
+        List<String[]> records = new ArrayList<>();
+        if (!file.isFile()) {
+            return records;
+        }
+        byte[] data = Utils.readContents(file);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= HEADER_SIZE) {
+            int start = buf.position();
+            int length = buf.getInt();
+            int checksum = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                buf.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(data, buf.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                buf.position(start);
+                break;
+            }
+            String payload = new String(data, buf.position(), length,
+                                        StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            records.add(payload.split(String.valueOf(SEPARATOR), -1));
+        }
+        if (buf.position() < data.length) {
+            truncate(file, buf.position());
+        }
+        return records;
+    }
+
+    /** Returns true iff the journal has grown large enough to compact. */
+    static boolean needsCompaction() {
+        return JOURNAL.length() > COMPACT_THRESHOLD;
+    }
+
+    /** Cuts FILE down to its first SIZE bytes. */
+    private static void truncate(File file, long size) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error repairing journal.");
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A template for printing one commit per entry of a log, compiled once
+ *  into literal text and fields.  The placeholders are %H, the commit id;
+ *  %h, its first seven digits; %P and %p, the same for the parents,
+ *  separated by spaces; %s, the message; %ad, the date; %n, a newline;
+ *  and %%, a percent sign.
+ *  @author Mudabbir Khan
+ */
+class LogFormat {
+
+    /** The format of log --oneline. */
+    static final LogFormat ONELINE = compile("%h %s");
+
+    /** Length of an abbreviated commit id. */
+    static final int ABBREV = 7;
+
+    /** Returns the format described by TEMPLATE. */
+    static LogFormat compile(String template) {
+        LogFormat result = new LogFormat();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < template.length(); i += 1) {
+            char c = template.charAt(i);
+            if (c != '%') {
+                text.append(c);
+                continue;
+            }
+            String field = template.startsWith("ad", i + 1) ? "ad"
+                : i + 1 < template.length()
+                ? template.substring(i + 1, i + 2) : "";
+            switch (field) {
+            case "%":
+                text.append('%');
+                break;
+            case "n":
+                text.append('\n');
+                break;
+            case "H": case "h": case "P": case "p": case "s": case "ad":
+                result.add(text.toString());
+                text.setLength(0);
+                result._parts.add(field.charAt(0) == 'a' ? 'd'
+                                  : field.charAt(0));
+                break;
+            default:
+                throw Utils.error("Unknown format placeholder: %%%s", field);
+            }
+            i += field.length();
+        }
+        result.add(text.toString());
+        return result;
+    }
+
+    /** Writes to OUT the entry for commit C, ending with a newline. */
+    void print(Commit c, PrintWriter out) {
+        for (Object part : _parts) {
+            if (part instanceof String) {
+                out.print((String) part);
+                continue;
+            }
+            switch ((Character) part) {
+            case 'H':
+                out.print(c.getCommitHash());
+                break;
+            case 'h':
+                out.print(c.getCommitHash().substring(0, ABBREV));
+                break;
+            case 'P':
+                out.print(parents(c, false));
+                break;
+            case 'p':
+                out.print(parents(c, true));
+                break;
+            case 's':
+                out.print(c.getMessage());
+                break;
+            default:
+                out.print(c.getDateString());
+                break;
+            }
+        }
+        out.print('\n');
+    }
+
+    /** Returns the ids of the parents of C, separated by spaces, and
+     *  abbreviated if ABBREV. */
+    private static String parents(Commit c, boolean abbrev) {
+        StringBuilder result = new StringBuilder();
+        for (String id : new String[] { c.getParentId(), c.getMergedId() }) {
+            if (id != null) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(abbrev ? id.substring(0, ABBREV) : id);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Adds the literal TEXT, if not empty. */
+    private void add(String text) {
+        if (!text.isEmpty()) {
+            _parts.add(text);
+        }
+    }
+
+    /** The literal Strings and the field letters (Characters) of the
+     *  template, in order; the date is 'd'. */
+    private final List<Object> _parts = new ArrayList<>();
+
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.*;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Mudabbir Khan
@@ -8,257 +9,298 @@ import java.io.*;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  The command is handed to the repository's
+     *  daemon if one is running, and run here otherwise. */
     public static void main(String... args) {
+        if (!Daemon.forward(args)) {
+            execute(args);
+        }
+        System.exit(0);
+    }
+
+    /** Runs the command ARGS, printing the message of any error. */
+    static void execute(String... args) {
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command ARGS. */
+    private static void run(String... args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
         }
         switch (args[0].toLowerCase()) {
         case "init":
             if (args.length == 1) {
                 File g = new File(".gitlet");
                 if (g.exists()) {
-                    System.out.println("A Gitlet version-control system already " +
+                    throw Utils.error("A Gitlet version-control system already " +
                             "exists in the current directory.");
-                    System.exit(0);
                 }
                 Registry gitlet = new Registry();
                 gitlet.init();
-                File allData = new File(".gitlet/AllData");
-                Utils.writeObject(allData, gitlet);
+                gitlet.save();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "log":
-            if (args.length == 1) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
-                gitlet.log();
-                Utils.writeObject(allData, gitlet);
-            } else {
-                System.out.println("Incorrect operands.");
-            }
-            System.exit(0);
+            log(false, args);
             break;
         case "global-log":
-            if (args.length == 1) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
-                gitlet.gLog();
-                Utils.writeObject(allData, gitlet);
-            } else {
-                System.out.println("Incorrect operands.");
-            }
-            System.exit(0);
+            log(true, args);
             break;
         case "status":
             if (args.length == 1) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.status();
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "add":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.add(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "commit":
             if (args.length <= 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
+                checkInitialized();
                 try {
-                    File allData = new File(".gitlet/AllData");
-                    Registry gitlet = Utils.readObject(allData, Registry.class);
+                    Registry gitlet = Registry.load();
                     gitlet.commit(args[1]);
-                    Utils.writeObject(allData, gitlet);
+                    gitlet.close();
                 } catch (ArrayIndexOutOfBoundsException e) {
                     System.out.println("Please enter a commit message.");
                 }
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "rm":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.remove(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "find":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.find(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "branch":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.branch(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "rm-branch":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.removeBranch(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "reset":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.reset(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "merge":
             if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.merge(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "diff":
+            if (args.length <= 3) {
+                checkInitialized();
+                Registry gitlet = Registry.load();
+                gitlet.diff(Arrays.copyOfRange(args, 1, args.length));
+                gitlet.close();
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "pack":
+            if (args.length == 1) {
+                checkInitialized();
+                Registry gitlet = Registry.load();
+                gitlet.pack();
+                gitlet.close();
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "gc":
+            if (args.length == 1) {
+                checkInitialized();
+                Registry gitlet = Registry.load();
+                gitlet.gc();
+                gitlet.close();
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "config":
+            if (args.length <= 3) {
+                checkInitialized();
+                if (args.length == 1) {
+                    Config.list();
+                } else if (args.length == 2) {
+                    String value = Config.get(args[1], null);
+                    if (value != null) {
+                        System.out.println(value);
+                    }
+                } else {
+                    Config.set(args[1], args[2]);
+                }
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "watch":
+            if (args.length == 1) {
+                checkInitialized();
+                try {
+                    Watcher.run();
+                } catch (IOException excp) {
+                    System.out.println("Cannot watch the working directory: "
+                                       + excp.getMessage());
+                }
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "daemon":
+            if (args.length == 1) {
+                checkInitialized();
+                try {
+                    Daemon.serve();
+                } catch (IOException excp) {
+                    System.out.println("Cannot serve the repository: "
+                                       + excp.getMessage());
+                }
+            } else if (args.length == 2 && args[1].equals("stop")) {
+                checkInitialized();
+                System.out.println("No daemon is running.");
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         case "checkout":
             if (args.length == 3) {
                 if (args[1].equals("--")) {
-                    File g = new File(".gitlet");
-                    if (!g.exists()) {
-                        System.out.println("Not in an initialized Gitlet directory.");
-                        System.exit(0);
-                    }
-                    File allData = new File(".gitlet/AllData");
-                    Registry gitlet = Utils.readObject(allData, Registry.class);
+                    checkInitialized();
+                    Registry gitlet = Registry.load();
                     gitlet.fileCheckout(args[2]);
-                    Utils.writeObject(allData, gitlet);
+                    gitlet.close();
                 } else {
                     System.out.println("Incorrect operands.");
                 }
             } else if (args.length == 4) {
                 if (args[2].equals("--")) {
-                    File g = new File(".gitlet");
-                    if (!g.exists()) {
-                        System.out.println("Not in an initialized Gitlet directory.");
-                        System.exit(0);
-                    }
-                    File allData = new File(".gitlet/AllData");
-                    Registry gitlet = Utils.readObject(allData, Registry.class);
+                    checkInitialized();
+                    Registry gitlet = Registry.load();
                     gitlet.checkout(args[1], args[3]);
-                    Utils.writeObject(allData, gitlet);
+                    gitlet.close();
                 } else {
                     System.out.println("Incorrect operands.");
                 }
             } else if (args.length == 2) {
-                File g = new File(".gitlet");
-                if (!g.exists()) {
-                    System.out.println("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                File allData = new File(".gitlet/AllData");
-                Registry gitlet = Utils.readObject(allData, Registry.class);
+                checkInitialized();
+                Registry gitlet = Registry.load();
                 gitlet.branchCheckout(args[1]);
-                Utils.writeObject(allData, gitlet);
+                gitlet.close();
             } else {
                 System.out.println("Incorrect operands.");
             }
-            System.exit(0);
             break;
         default:
             System.out.println("No command with that name exists.");
-            System.exit(0);
+        }
+    }
+
+    /** Runs global-log if GLOBAL, and otherwise log, with the options in
+     *  ARGS after the command: -n COUNT, to print at most COUNT commits,
+     *  and either --oneline or --format TEMPLATE (or --format=TEMPLATE),
+     *  to print each in a LogFormat.  For log, a final -- PATH limits the
+     *  history to the commits that changed PATH. */
+    private static void log(boolean global, String... args) {
+        int limit = Integer.MAX_VALUE;
+        LogFormat format = null;
+        String path = null;
+        for (int i = 1; i < args.length; i += 1) {
+            String arg = args[i];
+            if (arg.equals("--") && !global && i + 2 == args.length) {
+                i += 1;
+                path = WorkTree.path(args[i]);
+            } else if (arg.equals("-n") && i + 1 < args.length
+                && args[i + 1].matches("\\d{1,9}")) {
+                i += 1;
+                limit = Integer.parseInt(args[i]);
+            } else if (arg.equals("--oneline") && format == null) {
+                format = LogFormat.ONELINE;
+            } else if (arg.equals("--format") && i + 1 < args.length
+                       && format == null) {
+                i += 1;
+                format = LogFormat.compile(args[i]);
+            } else if (arg.startsWith("--format=") && format == null) {
+                format = LogFormat.compile(arg.substring("--format=".length()));
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        checkInitialized();
+        Registry gitlet = Registry.load();
+        if (global) {
+            gitlet.gLog(limit, format);
+        } else {
+            gitlet.log(limit, format, path);
+        }
+        gitlet.close();
+    }
+
+    /** Checks that the current directory holds a repository. */
+    private static void checkInitialized() {
+        if (!new File(".gitlet").exists()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
     }
 
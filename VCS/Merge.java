@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A three-way merge of the files of two commits, CURRENT and GIVEN, with
+ *  their split point.  Only the files that the given side changed since
+ *  the split point can need anything done, and these are found, along
+ *  with the current side's changes, by diffing trees, so directories that
+ *  a side left alone are never read.  Each such path is classified once,
+ *  from its blob ids in the three commits, by looking up how each side
+ *  changed it in ACTIONS; the resulting writes, deletions and conflict
+ *  files are then carried out together by a Checkout, and the index is
+ *  updated to match.  A file changed on both sides is merged line by line
+ *  (diff3): changes that do not overlap are combined, and only
+ *  overlapping changes that differ are left between conflict markers.
+ *  @author Mudabbir Khan
+ */
+class Merge {
+
+    /** Action for a file the merge leaves as it is in the current commit. */
+    static final int KEEP = 0;
+
+    /** Action for a file that takes its version in the given commit. */
+    static final int TAKE = 1;
+
+    /** Action for a file that the merge removes. */
+    static final int REMOVE = 2;
+
+    /** Action for a file changed differently on the two sides. */
+    static final int CONFLICT = 3;
+
+    /** A side on which a file is absent, but was present at the split. */
+    private static final int DELETED = 0;
+
+    /** A side on which a file is as it was at the split point, where
+     *  being absent from both counts as the same. */
+    private static final int SAME = 1;
+
+    /** A side on which a file has been added or changed since the split. */
+    private static final int CHANGED = 2;
+
+    /** The action for a file, indexed by what the current side and then
+     *  the given side did to it.  Files changed the same way on both sides
+     *  are kept without consulting the table. */
+    private static final int[][] ACTIONS = {
+        /* DELETED */ { KEEP, KEEP, CONFLICT },
+        /* SAME */    { REMOVE, KEEP, TAKE },
+        /* CHANGED */ { CONFLICT, KEEP, CONFLICT },
+    };
+
+    /** Classifies the files of SPLIT, CURRENT and GIVEN, the split point
+     *  and the two commits being merged.  A file the given side left as it
+     *  was is kept whatever the current side did, so only the given side's
+     *  changes are classified, each against the current side's change to
+     *  the same path, if any. */
+    Merge(Commit split, Commit current, Commit given) {
+        Map<String, String> ours = new HashMap<>();
+        Tree.diff(split.getTreeId(), current.getTreeId(),
+            (path, oldId, newId) -> ours.put(path, newId));
+        Tree.diff(split.getTreeId(), given.getTreeId(),
+            (path, oldId, newId) ->
+                add(path, oldId,
+                    ours.containsKey(path) ? ours.get(path) : oldId, newId));
+    }
+
+    /** Returns the action for a file whose blob ids at the split point and
+     *  in the current and given commits are SPLIT, CURRENT and GIVEN, each
+     *  null if the file is absent there. */
+    static int classify(String split, String current, String given) {
+        if (Objects.equals(current, given)) {
+            return KEEP;
+        }
+        return ACTIONS[side(split, current)][side(split, given)];
+    }
+
+    /** Returns true iff applying the merge left conflict markers in some
+     *  file. */
+    boolean hasConflicts() {
+        return !_conflicted.isEmpty();
+    }
+
+    /** Writes the merged files to the working directory and stages them in
+     *  INDEX: the given versions of files taken from the given commit, the
+     *  removals, and the conflict files. */
+    void apply(Index index) {
+        Checkout plan = new Checkout();
+        for (Map.Entry<String, String> file : _take.entrySet()) {
+            plan.write(file.getKey(), file.getValue());
+        }
+        for (String path : _remove.keySet()) {
+            plan.delete(path);
+        }
+        Map<String, String> written = new ConcurrentHashMap<>();
+        for (Map.Entry<String, String[]> file : _conflicts.entrySet()) {
+            String path = file.getKey();
+            String[] ids = file.getValue();
+            plan.write(path, () -> {
+                File work = new File(path);
+                boolean[] clash = { false };
+                Utils.writeContents(work, merge(ids[0], ids[1], ids[2],
+                                                clash));
+                if (clash[0]) {
+                    _conflicted.add(path);
+                }
+                written.put(path, ObjectStore.writeBlob(path, work));
+            });
+        }
+        plan.run();
+        for (Map.Entry<String, String> file : _take.entrySet()) {
+            index.stage(file.getKey(), file.getValue(),
+                        new File(file.getKey()));
+        }
+        for (Map.Entry<String, String> file : _remove.entrySet()) {
+            index.markRemoved(file.getKey(), file.getValue());
+        }
+        for (String path : _conflicts.keySet()) {
+            index.stage(path, written.get(path), new File(path));
+        }
+    }
+
+    /** Returns the merge of the blobs SPLIT, CURRENT and GIVEN, any of
+     *  which is null for a file that is absent, setting CLASH[0] if the
+     *  result has conflicts.  A file deleted on one side conflicts as a
+     *  whole. */
+    private static String merge(String split, String current, String given,
+                                boolean[] clash) {
+        if (current == null || given == null) {
+            clash[0] = true;
+            return "<<<<<<< HEAD\n"
+                + (current == null ? "" : ObjectStore.readBlobAsString(current))
+                + "=======\n"
+                + (given == null ? "" : ObjectStore.readBlobAsString(given))
+                + ">>>>>>>";
+        }
+        return merge3(split == null ? "" : ObjectStore.readBlobAsString(split),
+                      ObjectStore.readBlobAsString(current),
+                      ObjectStore.readBlobAsString(given), clash);
+    }
+
+    /** Returns the three-way merge of the texts CURRENT and GIVEN, which
+     *  both derive from BASE, setting CLASH[0] if it has conflicts.  The
+     *  changes each side made to BASE are found by diffing lines, and
+     *  changes whose ranges of BASE overlap or touch are grouped.  A group
+     *  holding changes from one side only, or the same changes from both,
+     *  is applied; any other group is written as the current side's lines
+     *  and the given side's lines between conflict markers. */
+    static String merge3(String base, String current, String given,
+                         boolean[] clash) {
+        List<String> b = Diff.lines(base);
+        List<String> c = Diff.lines(current);
+        List<String> g = Diff.lines(given);
+        List<Diff.Hunk> ours = Diff.diff(b, c);
+        List<Diff.Hunk> theirs = Diff.diff(b, g);
+        StringBuilder out = new StringBuilder();
+        boolean marker = false;
+        int pos = 0, i = 0, j = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            int i0 = i, j0 = j;
+            Diff.Hunk first;
+            if (j == theirs.size() || i < ours.size()
+                && ours.get(i).aLo() <= theirs.get(j).aLo()) {
+                first = ours.get(i++);
+            } else {
+                first = theirs.get(j++);
+            }
+            int lo = first.aLo(), hi = first.aHi();
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (i < ours.size() && ours.get(i).aLo() <= hi) {
+                    hi = Math.max(hi, ours.get(i++).aHi());
+                    grew = true;
+                }
+                if (j < theirs.size() && theirs.get(j).aLo() <= hi) {
+                    hi = Math.max(hi, theirs.get(j++).aHi());
+                    grew = true;
+                }
+            }
+            String mine = side(b, c, ours.subList(i0, i), lo, hi);
+            String other = side(b, g, theirs.subList(j0, j), lo, hi);
+            String chosen = i == i0 ? other : j == j0 || mine.equals(other)
+                ? mine : null;
+            String unchanged = join(b, pos, lo);
+            if (marker && (!unchanged.isEmpty() || chosen == null
+                           || !chosen.isEmpty())) {
+                out.append('\n');
+                marker = false;
+            }
+            out.append(unchanged);
+            if (chosen != null) {
+                out.append(chosen);
+            } else {
+                clash[0] = true;
+                out.append("<<<<<<< HEAD\n").append(mine).append("=======\n")
+                    .append(other).append(">>>>>>>");
+                marker = true;
+            }
+            pos = hi;
+        }
+        String rest = join(b, pos, b.size());
+        if (marker && !rest.isEmpty()) {
+            out.append('\n');
+        }
+        return out.append(rest).toString();
+    }
+
+    /** Returns the lines of the part of BASE between lines LO and HI as
+     *  one side, whose lines are LINES, changed them with HUNKS, all of
+     *  which lie within that part. */
+    private static String side(List<String> base, List<String> lines,
+                               List<Diff.Hunk> hunks, int lo, int hi) {
+        if (hunks.isEmpty()) {
+            return join(base, lo, hi);
+        }
+        Diff.Hunk first = hunks.get(0), last = hunks.get(hunks.size() - 1);
+        return join(lines, first.bLo() - (first.aLo() - lo),
+                    last.bHi() + (hi - last.aHi()));
+    }
+
+    /** Returns LINES[LO .. HI) concatenated. */
+    private static String join(List<String> lines, int lo, int hi) {
+        StringBuilder result = new StringBuilder();
+        for (int k = lo; k < hi; k += 1) {
+            result.append(lines.get(k));
+        }
+        return result.toString();
+    }
+
+    /** Returns what a side whose blob id for a file is ID did to the file,
+     *  whose id at the split point is SPLIT. */
+    private static int side(String split, String id) {
+        if (Objects.equals(split, id)) {
+            return SAME;
+        }
+        return id == null ? DELETED : CHANGED;
+    }
+
+    /** Records the action for PATH, whose ids at the split point, in the
+     *  current commit and in the given commit are SPLIT, CURRENT, GIVEN. */
+    private void add(String path, String split, String current,
+                     String given) {
+        switch (classify(split, current, given)) {
+        case TAKE:
+            _take.put(path, given);
+            break;
+        case REMOVE:
+            _remove.put(path, current);
+            break;
+        case CONFLICT:
+            _conflicts.put(path, new String[] { split, current, given });
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Blob ids of the files taken from the given commit, keyed by path. */
+    private final TreeMap<String, String> _take = new TreeMap<>();
+
+    /** Current blob ids of the files removed, keyed by path. */
+    private final TreeMap<String, String> _remove = new TreeMap<>();
+
+    /** The split, current and given blob ids of the files changed on both
+     *  sides, keyed by path. */
+    private final TreeMap<String, String[]> _conflicts = new TreeMap<>();
+
+    /** The files left with conflict markers by apply. */
+    private final Set<String> _conflicted = ConcurrentHashMap.newKeySet();
+
+}
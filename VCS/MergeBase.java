@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** Merge bases: the best common ancestors of two commits, found over the
+ *  commit graph.  The search paints the history from both commits at
+ *  once, following both parents of merges and taking commits in order of
+ *  decreasing generation, so a commit is only examined once everything
+ *  above it is.  A commit reached from both sides is a common ancestor;
+ *  its own ancestors are marked stale, since they cannot be best, and the
+ *  search stops as soon as nothing but stale commits is left to examine.
+ *  Results are remembered in a small least-recently-used table, kept in
+ *  .gitlet/merge-bases, so repeated merges between the same commits do
+ *  not walk the history again.
+ *  @author Mudabbir Khan
+ */
+class MergeBase {
+
+    /** File holding the remembered merge bases. */
+    static final File CACHE_FILE = Utils.join(".gitlet", "merge-bases");
+
+    /** Largest number of merge bases remembered. */
+    private static final int CACHE_LIMIT = 64;
+
+    /** Returns the id of the best common ancestor of the commits with ids
+     *  A and B, according to GRAPH.  When criss-cross merges leave several
+     *  common ancestors none of which is an ancestor of another, the one
+     *  with the highest generation, and then the latest, is chosen. */
+    static String find(CommitGraph graph, String a, String b) {
+        String key = a.compareTo(b) < 0 ? a + " " + b : b + " " + a;
+        Map<String, String> cache = cache();
+        String base = cache.get(key);
+        if (base == null) {
+            base = best(graph, common(graph, graph.row(a), graph.row(b)));
+            cache.put(key, base);
+            save();
+        }
+        return base;
+    }
+
+    /** Returns the rows of the best common ancestors of the commits in
+     *  rows A and B of GRAPH. */
+    static List<Integer> common(CommitGraph graph, int a, int b) {
+        BitSet fromA = new BitSet(graph.size());
+        BitSet fromB = new BitSet(graph.size());
+        BitSet stale = new BitSet(graph.size());
+        BitSet queued = new BitSet(graph.size());
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(graph.generation(y),
+                                      graph.generation(x));
+            return cmp != 0 ? cmp : Integer.compare(x, y);
+        });
+        fromA.set(a);
+        fromB.set(b);
+        queue.add(a);
+        queued.set(a);
+        if (b != a) {
+            queue.add(b);
+            queued.set(b);
+        }
+        int live = queue.size();
+        List<Integer> result = new ArrayList<>();
+        while (live > 0) {
+            int row = queue.poll();
+            queued.clear(row);
+            if (!stale.get(row)) {
+                live -= 1;
+            }
+            boolean both = fromA.get(row) && fromB.get(row);
+            if (both && !stale.get(row)) {
+                result.add(row);
+            }
+            for (int next : new int[] { graph.parent(row),
+                                        graph.merged(row) }) {
+                if (next == CommitGraph.NONE) {
+                    continue;
+                }
+                boolean changed = false;
+                if (fromA.get(row) && !fromA.get(next)) {
+                    fromA.set(next);
+                    changed = true;
+                }
+                if (fromB.get(row) && !fromB.get(next)) {
+                    fromB.set(next);
+                    changed = true;
+                }
+                if ((both || stale.get(row)) && !stale.get(next)) {
+                    stale.set(next);
+                    if (queued.get(next)) {
+                        live -= 1;
+                    }
+                    changed = true;
+                }
+                if (changed && !queued.get(next)) {
+                    queue.add(next);
+                    queued.set(next);
+                    if (!stale.get(next)) {
+                        live += 1;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the id of the best of the commits in ROWS of GRAPH: the one
+     *  of highest generation, then the latest, then the least id. */
+    private static String best(CommitGraph graph, List<Integer> rows) {
+        if (rows.isEmpty()) {
+            throw Utils.error("Commits have no common ancestor.");
+        }
+        int best = rows.get(0);
+        for (int row : rows) {
+            int cmp = Integer.compare(graph.generation(row),
+                                      graph.generation(best));
+            if (cmp == 0) {
+                cmp = Long.compare(graph.time(row), graph.time(best));
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(best, row);
+            }
+            if (cmp > 0) {
+                best = row;
+            }
+        }
+        return graph.idAt(best);
+    }
+
+    /** Forgets all remembered merge bases. */
+    static void clear() {
+        CACHE_FILE.delete();
+        _cache = null;
+    }
+
+    /** Returns the remembered merge bases, keyed by the two commit ids in
+     *  order and separated by a space, least recently used first. */
+    private static Map<String, String> cache() {
+        if (_cache == null) {
+            _cache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, String> eldest) {
+                    return size() > CACHE_LIMIT;
+                }
+            };
+            if (CACHE_FILE.isFile()) {
+                String[] lines = Utils.readContentsAsString(CACHE_FILE)
+                    .split("\n");
+                for (String line : lines) {
+                    int split = line.lastIndexOf(' ');
+                    if (split > 0) {
+                        _cache.put(line.substring(0, split),
+                                   line.substring(split + 1));
+                    }
+                }
+            }
+        }
+        return _cache;
+    }
+
+    /** Saves the remembered merge bases, least recently used first. */
+    private static void save() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> entry : cache().entrySet()) {
+            out.append(entry.getKey()).append(' ').append(entry.getValue())
+                .append('\n');
+        }
+        Utils.writeContentsAtomically(CACHE_FILE, out.toString());
+    }
+
+    /** The remembered merge bases, or null if not read yet. */
+    private static LinkedHashMap<String, String> _cache;
+
+}
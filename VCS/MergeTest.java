@@ -0,0 +1,69 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static gitlet.Merge.*;
+
+/** Tests of the classification of files in a three-way merge.
+ *  @author Mudabbir Khan
+ */
+public class MergeTest {
+
+    @Test
+    public void changedOnOneSide() {
+        assertEquals(TAKE, classify("s", "s", "g"));
+        assertEquals(KEEP, classify("s", "c", "s"));
+        assertEquals(TAKE, classify(null, null, "g"));
+        assertEquals(KEEP, classify(null, "c", null));
+    }
+
+    @Test
+    public void removedOnOneSide() {
+        assertEquals(REMOVE, classify("s", "s", null));
+        assertEquals(KEEP, classify("s", null, "s"));
+        assertEquals(KEEP, classify("s", null, null));
+    }
+
+    @Test
+    public void changedOnBothSides() {
+        assertEquals(KEEP, classify("s", "x", "x"));
+        assertEquals(CONFLICT, classify("s", "c", "g"));
+        assertEquals(CONFLICT, classify("s", "c", null));
+        assertEquals(CONFLICT, classify("s", null, "g"));
+        assertEquals(CONFLICT, classify(null, "c", "g"));
+    }
+
+    /** Returns the merge of BASE, CURRENT and GIVEN, checking that it has
+     *  conflicts iff CONFLICTS. */
+    private static String merge(String base, String current, String given,
+                                boolean conflicts) {
+        boolean[] clash = { false };
+        String result = merge3(base, current, given, clash);
+        assertEquals(conflicts, clash[0]);
+        return result;
+    }
+
+    @Test
+    public void separateEditsAreCombined() {
+        String base = "1\n2\n3\n4\n5\n6\n7\n";
+        assertEquals("one\n2\n3\n4\n5\n6\nseven\n",
+                     merge(base, "one\n2\n3\n4\n5\n6\n7\n",
+                           "1\n2\n3\n4\n5\n6\nseven\n", false));
+        assertEquals("1\n3\n4\n5\n6\n7\n8\n",
+                     merge(base, "1\n3\n4\n5\n6\n7\n",
+                           base + "8\n", false));
+        assertEquals("1\nx\n3\n", merge("1\n2\n3\n", "1\nx\n3\n",
+                                         "1\nx\n3\n", false));
+    }
+
+    @Test
+    public void overlappingEditsConflict() {
+        assertEquals("1\n<<<<<<< HEAD\nc\n=======\ng\n>>>>>>>\n3\n",
+                     merge("1\n2\n3\n", "1\nc\n3\n", "1\ng\n3\n", true));
+        assertEquals("<<<<<<< HEAD\nThis is a wug.\n=======\n"
+                     + "This is not a wug.\n>>>>>>>",
+                     merge("", "This is a wug.\n", "This is not a wug.\n",
+                           true));
+    }
+
+}
@@ -0,0 +1,809 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Content-addressable store for file contents and commits.  Each blob
+ *  lives once in .gitlet/objects/<first two digits of its id>/<remaining
+ *  digits>, and each commit in .gitlet/commits/<id>, until the pack
+ *  command consolidates them into a pack under .gitlet/pack.  Lookups try
+ *  the loose files first and then the packs, so packing can happen while
+ *  the repository is in use.
+ *
+ *  A stored file starts with an encoding byte: RAW for bytes stored as
+ *  they are, or DEFLATED for a zlib stream at the repository's
+ *  core.compression level.  Objects are compressed and decompressed as
+ *  streams, through fixed-size buffers.  With core.chunking on, a large
+ *  file is instead stored as CHUNKED: the list of its content-defined
+ *  chunks (see Chunker), each stored once however many versions of the
+ *  file contain it, and reassembled as a stream when read.
+ *  @author Mudabbir Khan
+ */
+class ObjectStore {
+
+    /** Directory holding all loose blobs. */
+    static final File OBJECTS_DIR = Utils.join(".gitlet", "objects");
+
+    /** Directory holding one file per loose commit, named by its id. */
+    static final File COMMITS_DIR = Utils.join(".gitlet", "commits");
+
+    /** Encoding byte of a file stored as it is. */
+    static final int RAW = 0;
+
+    /** Encoding byte of a file compressed with zlib. */
+    static final int DEFLATED = 1;
+
+    /** Encoding byte of a large file stored as the ids of its chunks, in
+     *  order.  Each chunk is a blob of its own. */
+    static final int CHUNKED = 2;
+
+    /** Size of the buffers used to stream stored files. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Returns the file in which the loose blob with id ID is stored. */
+    static File objectFile(String id) {
+        return Utils.join(OBJECTS_DIR, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Returns the file in which the loose commit with id ID is stored. */
+    static File commitFile(String id) {
+        return Utils.join(COMMITS_DIR, id);
+    }
+
+    /** Returns true iff an object with id ID is already stored. */
+    static boolean contains(String id) {
+        return objectFile(id).isFile() || commitFile(id).isFile()
+            || findPacked(id) != null;
+    }
+
+    /** Returns true iff an object with id ID is already stored, in which
+     *  case the file holding it, loose or packed, gets its modification
+     *  time set to now: the object is about to be used again, and gc must
+     *  grant it a fresh grace period even if nothing reaches it yet. */
+    static boolean freshen(String id) {
+        long now = System.currentTimeMillis();
+        for (File file : new File[] { objectFile(id), commitFile(id) }) {
+            if (file.isFile()) {
+                file.setLastModified(now);
+                return true;
+            }
+        }
+        Location found = findPacked(id);
+        if (found == null) {
+            return false;
+        }
+        found.pack.packFile().setLastModified(now);
+        return true;
+    }
+
+    /** Stores CONTENTS under ID, unless an object with that id already
+     *  exists. */
+    static void writeBlob(String id, byte[] contents) {
+        if (freshen(id)) {
+            return;
+        }
+        File file = objectFile(id);
+        file.getParentFile().mkdirs();
+        writeStored(file, contents);
+    }
+
+    /** Stores the contents of SOURCE as a version of the file named NAME,
+     *  reading SOURCE just once, through a fixed-size buffer that feeds
+     *  both the hash and the stored file.  When chunking is on, a large
+     *  file is stored as the list of its chunks, and only the chunks not
+     *  stored already are written.  Returns the blob's id. */
+    static String writeBlob(String name, File source) {
+        MessageDigest md = Commit.blobDigest(name);
+        File temp = incoming();
+        boolean chunked = Config.chunking()
+            && source.length() >= Chunker.THRESHOLD;
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = chunked ? new BufferedOutputStream(
+                 Files.newOutputStream(temp.toPath())) : openWrite(temp)) {
+            Chunker chunker = null;
+            if (chunked) {
+                out.write(CHUNKED);
+                chunker = new Chunker((data, length) -> {
+                    byte[] chunk = Arrays.copyOf(data, length);
+                    String chunkId = Utils.sha1("chunk ", chunk);
+                    writeBlob(chunkId, chunk);
+                    out.write(Utils.fromHex(chunkId));
+                });
+            }
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                if (chunked) {
+                    chunker.write(buf, 0, n);
+                } else {
+                    out.write(buf, 0, n);
+                }
+            }
+            if (chunked) {
+                chunker.finish();
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("Cannot read %s: %s", source,
+                              excp.getMessage());
+        }
+        String id = Utils.toHex(md.digest(), 0);
+        if (freshen(id)) {
+            temp.delete();
+            return id;
+        }
+        File file = objectFile(id);
+        file.getParentFile().mkdirs();
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("Cannot write %s: %s", file, excp.getMessage());
+        }
+        return id;
+    }
+
+    /** Returns a new, empty temporary file in the object directory. */
+    private static File incoming() {
+        try {
+            OBJECTS_DIR.mkdirs();
+            return File.createTempFile("incoming", ".tmp", OBJECTS_DIR);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the blob with id ID. */
+    static byte[] readBlob(String id) {
+        File file = objectFile(id);
+        if (file.isFile()) {
+            return readStored(file);
+        }
+        byte[] data = readPacked(id);
+        if (data == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return data;
+    }
+
+    /** Writes the contents of the blob with id ID to TARGET.  Contents
+     *  stored uncompressed, in a loose file or a pack, go straight from
+     *  the object file or mapped pack to TARGET without being copied onto
+     *  the Java heap. */
+    static void checkout(String id, File target) {
+        File file = objectFile(id);
+        Location found = file.isFile() ? null : findPacked(id);
+        if (!file.isFile() && found == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (found != null) {
+                if (found.pack.chunkList(found.index) != null) {
+                    try (InputStream in = openBlob(id)) {
+                        in.transferTo(Channels.newOutputStream(out));
+                    }
+                } else if (!found.pack.transferTo(found.index, out)) {
+                    out.write(ByteBuffer.wrap(found.pack.read(found.index)));
+                }
+                return;
+            }
+            try (FileChannel in = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                long start = rawStart(in);
+                if (start >= 0) {
+                    long position = start;
+                    while (position < in.size()) {
+                        position += in.transferTo(position,
+                                                  in.size() - position, out);
+                    }
+                    return;
+                }
+            }
+            try (InputStream in = openRead(file)) {
+                in.transferTo(Channels.newOutputStream(out));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s: %s", target,
+                              excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the blob with id ID as a String. */
+    static String readBlobAsString(String id) {
+        return new String(readBlob(id), StandardCharsets.UTF_8);
+    }
+
+    /** Stores the encoded commit DATA under ID. */
+    static void writeCommit(String id, byte[] data) {
+        writeStored(commitFile(id), data);
+    }
+
+    /** Returns the encoded commit with id ID, or null if there is none. */
+    static byte[] readCommit(String id) {
+        File file = commitFile(id);
+        if (file.isFile()) {
+            return readStored(file);
+        }
+        return readPacked(id);
+    }
+
+    /** Returns true iff a commit with id ID is stored. */
+    static boolean containsCommit(String id) {
+        if (commitFile(id).isFile()) {
+            return true;
+        }
+        Location found = findPacked(id);
+        return found != null && found.pack.type(found.index) == Pack.COMMIT;
+    }
+
+    /** Returns the ids of all stored commits, in sorted order. */
+    static List<String> commitIds() {
+        TreeSet<String> ids = new TreeSet<>();
+        List<String> loose = Utils.plainFilenamesIn(COMMITS_DIR);
+        if (loose != null) {
+            for (String name : loose) {
+                if (isId(name)) {
+                    ids.add(name);
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (pack.type(k) == Pack.COMMIT) {
+                    ids.add(pack.idAt(k));
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Consolidates every loose object, and the contents of every
+     *  existing pack, into a single new pack, or as few as Pack.MAX_SIZE
+     *  allows, and then removes the loose files and old packs it
+     *  replaces.  Blobs are written in the order their files' histories
+     *  introduced them, each suggesting the previous version of the same
+     *  file as its delta base. */
+    static void pack() {
+        repack(null, Long.MAX_VALUE);
+    }
+
+    /** Deletes every stored object whose id is not in LIVE, and packs the
+     *  rest as pack does.  Loose objects written, and packs written or
+     *  freshened, less than GRACE milliseconds ago are left alone, as an
+     *  add still in progress may be about to stage what they hold; such
+     *  packs are kept whole rather than merged into the new one.  Returns
+     *  the number of objects, and of stray files in the object
+     *  directories, deleted. */
+    static int sweep(Set<String> live, long grace) {
+        long cutoff = System.currentTimeMillis() - grace;
+        int deleted = 0;
+        List<String> looseCommits = Utils.plainFilenamesIn(COMMITS_DIR);
+        if (looseCommits != null) {
+            for (String id : looseCommits) {
+                File file = commitFile(id);
+                if ((!isId(id) || !live.contains(id))
+                    && file.lastModified() < cutoff && file.delete()) {
+                    deleted += 1;
+                }
+            }
+        }
+        File[] fanout = OBJECTS_DIR.listFiles(File::isDirectory);
+        if (fanout != null) {
+            for (File dir : fanout) {
+                for (String name : Utils.plainFilenamesIn(dir)) {
+                    File file = new File(dir, name);
+                    String id = dir.getName() + name;
+                    if ((!isId(id) || !live.contains(id))
+                        && file.lastModified() < cutoff && file.delete()) {
+                        deleted += 1;
+                    }
+                }
+            }
+        }
+        List<String> incoming = Utils.plainFilenamesIn(OBJECTS_DIR);
+        if (incoming != null) {
+            for (String name : incoming) {
+                File file = new File(OBJECTS_DIR, name);
+                if (file.lastModified() < cutoff) {
+                    file.delete();
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            if (pack.packFile().lastModified() >= cutoff) {
+                continue;
+            }
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (!live.contains(pack.idAt(k))) {
+                    deleted += 1;
+                }
+            }
+        }
+        repack(live, cutoff);
+        return deleted;
+    }
+
+    /** Consolidates the loose objects and the contents of the existing
+     *  packs into new packs, as described for pack, keeping only
+     *  the objects whose ids are in LIVE, or all of them if LIVE is null.
+     *  Loose objects not in LIVE stay where they are.  When LIVE is not
+     *  null, packs last modified at or after CUTOFF stay as they are, and
+     *  the objects they hold are left out of the new packs. */
+    private static void repack(Set<String> live, long cutoff) {
+        List<Pack> oldPacks = new ArrayList<>();
+        Set<String> kept = new HashSet<>();
+        for (Pack pack : packs()) {
+            if (live != null && pack.packFile().lastModified() >= cutoff) {
+                for (int k = 0; k < pack.size(); k += 1) {
+                    kept.add(pack.idAt(k));
+                }
+            } else {
+                oldPacks.add(pack);
+            }
+        }
+        TreeSet<String> ids = new TreeSet<>();
+        List<File> looseFiles = new ArrayList<>();
+        List<String> looseCommits = Utils.plainFilenamesIn(COMMITS_DIR);
+        if (looseCommits != null) {
+            for (String id : looseCommits) {
+                if (isId(id) && (live == null || live.contains(id))) {
+                    ids.add(id);
+                    looseFiles.add(commitFile(id));
+                }
+            }
+        }
+        File[] fanout = OBJECTS_DIR.listFiles(File::isDirectory);
+        if (fanout != null) {
+            for (File dir : fanout) {
+                List<String> rest = Utils.plainFilenamesIn(dir);
+                for (String name : rest) {
+                    String id = dir.getName() + name;
+                    if (isId(id) && (live == null || live.contains(id))) {
+                        ids.add(id);
+                        looseFiles.add(new File(dir, name));
+                    }
+                }
+            }
+        }
+        for (Pack pack : oldPacks) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (live == null || live.contains(pack.idAt(k))) {
+                    ids.add(pack.idAt(k));
+                }
+            }
+        }
+        ids.removeAll(kept);
+        if (ids.isEmpty() && oldPacks.isEmpty()) {
+            return;
+        }
+        HashMap<String, String> bases = new HashMap<>();
+        List<String> order = historyOrder(ids, bases);
+        List<File> written = ids.isEmpty() ? List.of()
+            : Pack.write(order, new Pack.Source() {
+            @Override
+            public int type(String id) {
+                if (commitFile(id).isFile()) {
+                    return Pack.COMMIT;
+                } else if (objectFile(id).isFile()) {
+                    return Pack.BLOB;
+                }
+                Location found = findPacked(id);
+                return found.pack.type(found.index);
+            }
+
+            @Override
+            public byte[] read(String id) {
+                if (commitFile(id).isFile()) {
+                    return readStored(commitFile(id));
+                } else if (objectFile(id).isFile()) {
+                    return readStored(objectFile(id));
+                }
+                return readPacked(id);
+            }
+
+            @Override
+            public byte[] chunkList(String id) {
+                if (objectFile(id).isFile()) {
+                    return readChunkList(objectFile(id));
+                } else if (commitFile(id).isFile()) {
+                    return null;
+                }
+                Location found = findPacked(id);
+                return found.pack.chunkList(found.index);
+            }
+
+            @Override
+            public String deltaBase(String id) {
+                return bases.get(id);
+            }
+        });
+        for (Pack pack : oldPacks) {
+            File packFile = pack.packFile();
+            File oldIdx = new File(packFile.getParentFile(),
+                    packFile.getName().replace(".pack", ".idx"));
+            if (!written.contains(oldIdx)) {
+                oldIdx.delete();
+                packFile.delete();
+                _packs.remove(oldIdx.getName());
+            }
+        }
+        scanPacks();
+        for (File file : looseFiles) {
+            file.delete();
+        }
+        if (fanout != null) {
+            for (File dir : fanout) {
+                dir.delete();
+            }
+        }
+    }
+
+    /** Returns true iff NAME, the name of a loose commit or the fan-out
+     *  directory and name of a loose blob, is an object id, rather than,
+     *  say, a temporary file left by writeStored. */
+    private static boolean isId(String name) {
+        return name.matches("[0-9a-f]{" + Utils.UID_LENGTH + "}");
+    }
+
+    /** Writes DATA to FILE in stored form, by way of a temporary file that
+     *  is renamed over FILE once complete.  A temporary file left behind
+     *  by a crash is not taken for an object, and is deleted by gc. */
+    static void writeStored(File file, byte[] data) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = openWrite(temp)) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s: %s", file, excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Returns the bytes stored in FILE. */
+    static byte[] readStored(File file) {
+        try (InputStream in = openRead(file)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Returns a stream that stores what is written to it in FILE,
+     *  compressing it unless the repository's compression level is 0. */
+    static OutputStream openWrite(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(
+            Files.newOutputStream(file.toPath()), BUFFER_SIZE);
+        int level = Config.compressionLevel();
+        if (level == 0) {
+            out.write(RAW);
+            return out;
+        }
+        out.write(DEFLATED);
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns a stream of the bytes stored in FILE.  A file that does not
+     *  start with an encoding byte predates them and is read as is. */
+    static InputStream openRead(File file) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(
+            new BufferedInputStream(Files.newInputStream(file.toPath()),
+                                    BUFFER_SIZE));
+        int encoding = in.read();
+        if (encoding == DEFLATED) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        } else if (encoding == CHUNKED) {
+            return openChunks(in);
+        } else if (encoding != RAW && encoding != -1) {
+            in.unread(encoding);
+        }
+        return in;
+    }
+
+    /** Returns the ids of the chunks of the blob with id ID, or an empty
+     *  list if it is not stored as chunks or not stored at all. */
+    static List<String> chunkIds(String id) {
+        byte[] list;
+        if (objectFile(id).isFile()) {
+            list = readChunkList(objectFile(id));
+        } else {
+            Location found = findPacked(id);
+            list = found == null ? null : found.pack.chunkList(found.index);
+        }
+        List<String> result = new ArrayList<>();
+        if (list != null) {
+            for (int i = 0; i + Utils.UID_BYTES <= list.length;
+                 i += Utils.UID_BYTES) {
+                result.add(Utils.toHex(list, i));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the contents of the chunked blob whose list of chunk ids
+     *  is LIST. */
+    static byte[] readChunks(byte[] list) {
+        try (InputStream in = openChunks(new ByteArrayInputStream(list))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read chunks: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the contents of the chunks whose ids are read
+     *  from LIST, opening each chunk only once the one before it has been
+     *  read. */
+    private static InputStream openChunks(InputStream list) {
+        Enumeration<InputStream> chunks = new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                if (_next == null) {
+                    _next = readChunkId(list);
+                }
+                return _next != null;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!hasMoreElements()) {
+                    throw new NoSuchElementException();
+                }
+                String id = _next;
+                _next = null;
+                return openBlob(id);
+            }
+
+            /** Id of the next chunk, if already read from LIST. */
+            private String _next;
+        };
+        return new SequenceInputStream(chunks) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    list.close();
+                }
+            }
+        };
+    }
+
+    /** Returns the next chunk id read from LIST, or null at its end. */
+    private static String readChunkId(InputStream list) {
+        try {
+            byte[] id = list.readNBytes(Utils.UID_BYTES);
+            if (id.length == 0) {
+                return null;
+            } else if (id.length < Utils.UID_BYTES) {
+                throw Utils.error("Corrupt chunk list.");
+            }
+            return Utils.toHex(id, 0);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read chunk list: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the contents of the blob with id ID. */
+    private static InputStream openBlob(String id) {
+        File file = objectFile(id);
+        try {
+            if (file.isFile()) {
+                return openRead(file);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", file, excp.getMessage());
+        }
+        Location found = findPacked(id);
+        if (found == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        byte[] list = found.pack.chunkList(found.index);
+        if (list != null) {
+            return openChunks(new ByteArrayInputStream(list));
+        }
+        return new ByteArrayInputStream(found.pack.read(found.index));
+    }
+
+    /** Returns the list of chunk ids stored in the loose object FILE, or
+     *  null if FILE does not hold a chunked blob. */
+    private static byte[] readChunkList(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return in.read() == CHUNKED ? in.readAllBytes() : null;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Returns the position in the stored file open on IN at which its
+     *  contents start, if they are stored uncompressed, or -1 if they
+     *  are compressed. */
+    private static long rawStart(FileChannel in) throws IOException {
+        ByteBuffer first = ByteBuffer.allocate(1);
+        if (in.read(first, 0) <= 0) {
+            return 0;
+        }
+        int encoding = first.get(0);
+        if (encoding == DEFLATED || encoding == CHUNKED) {
+            return -1;
+        }
+        return encoding == RAW ? 1 : 0;
+    }
+
+    /** Returns the objects IDS in the order a pack should hold them: all
+     *  commits, then the blobs in the order the commits, oldest first,
+     *  introduced them, then any remaining objects.  Fills BASES with the
+     *  previous version of the same file for each blob that has one. */
+    private static List<String> historyOrder(TreeSet<String> ids,
+                                             HashMap<String, String> bases) {
+        List<Commit> commits = new ArrayList<>();
+        for (String id : commitIds()) {
+            if (ids.contains(id)) {
+                commits.add(Codec.readCommit(readCommit(id)));
+            }
+        }
+        commits.sort(Comparator.comparingLong(Commit::getTime));
+        LinkedHashSet<String> order = new LinkedHashSet<>();
+        HashMap<String, String> latest = new HashMap<>();
+        for (Commit c : commits) {
+            order.add(c.getCommitHash());
+        }
+        for (Commit c : commits) {
+            for (String name : new TreeSet<>(c.getBlobNames())) {
+                String blob = c.getBlobHash(name);
+                String previous = latest.put(name, blob);
+                if (ids.contains(blob) && order.add(blob)
+                    && previous != null && !previous.equals(blob)) {
+                    bases.put(blob, previous);
+                }
+            }
+        }
+        order.addAll(ids);
+        return new ArrayList<>(order);
+    }
+
+    /** Returns the bytes of the packed object with id ID, or null if no
+     *  pack holds it. */
+    private static byte[] readPacked(String id) {
+        Location found = findPacked(id);
+        if (found == null) {
+            return null;
+        }
+        return found.pack.read(found.index);
+    }
+
+    /** Returns the location of the packed object with id ID, or null if
+     *  no pack holds it.  On a miss, the pack directory is checked once
+     *  for packs written since it was last scanned. */
+    private static Location findPacked(String id) {
+        byte[] raw = Utils.fromHex(id);
+        do {
+            for (Pack pack : packs()) {
+                int k = pack.find(raw);
+                if (k >= 0) {
+                    return new Location(pack, k);
+                }
+            }
+        } while (scanPacks());
+        return null;
+    }
+
+    /** Forgets the packs whose files have been removed since they were
+     *  opened, by another process's pack or gc, and opens any new ones,
+     *  so that a long-running process sees the current packs. */
+    static synchronized void refresh() {
+        if (_packs != null) {
+            _packs.values().removeIf(pack -> !pack.packFile().isFile());
+            scanPacks();
+        }
+    }
+
+    /** Returns the packs of this repository, opening them on first use. */
+    private static synchronized List<Pack> packs() {
+        if (_packs == null) {
+            scanPacks();
+        }
+        return new ArrayList<>(_packs.values());
+    }
+
+    /** Opens any pack not opened yet.  Returns true iff there was one. */
+    private static synchronized boolean scanPacks() {
+        if (_packs == null) {
+            _packs = new TreeMap<>();
+        }
+        File[] indices = Pack.PACK_DIR.listFiles(
+            (dir, name) -> name.endsWith(".idx"));
+        boolean added = false;
+        if (indices != null) {
+            for (File idx : indices) {
+                if (!_packs.containsKey(idx.getName())) {
+                    _packs.put(idx.getName(), new Pack(idx));
+                    added = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    /** The position of an object within a pack. */
+    private static class Location {
+        /** The object at position INDEX of PACK. */
+        Location(Pack pack, int index) {
+            this.pack = pack;
+            this.index = index;
+        }
+
+        /** The pack holding the object. */
+        private final Pack pack;
+
+        /** The object's position in PACK, in id order. */
+        private final int index;
+    }
+
+    /** The open packs, keyed by index file name, or null if the pack
+     *  directory has not been scanned yet. */
+    private static TreeMap<String, Pack> _packs;
+
+}
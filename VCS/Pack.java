@@ -0,0 +1,586 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A pack: many objects consolidated into one .pack file, together with an
+ *  .idx file listing their ids in sorted order.  Both files are memory
+ *  mapped, and an object is found by a binary search of the index,
+ *  narrowed first by a 256-entry fan-out table on the id's first byte.
+ *
+ *  A .pack file holds a header (magic, version, object count) followed by
+ *  the objects, each stored as a type byte, an encoding byte (as for
+ *  ObjectStore), the object's size, the length of its stored form and
+ *  the stored bytes.  A blob may instead be stored as a delta: the id of a
+ *  base object in the same pack, followed by a Delta that rebuilds the
+ *  blob from the base, and a large blob stored as chunks keeps just its
+ *  list of chunk ids, the chunks being objects of their own.  Bases are
+ *  written before the deltas that use them and chains of deltas are at
+ *  most MAX_DEPTH long.  An .idx file holds a header, the fan-out table,
+ *  the sorted 20-byte ids, and the offset in the .pack of each id's
+ *  object.  A .pack file is never larger than MAX_SIZE: objects that would
+ *  not fit go into further packs.
+ *  @author Mudabbir Khan
+ */
+class Pack {
+
+    /** Directory holding all packs. */
+    static final File PACK_DIR = Utils.join(".gitlet", "pack");
+
+    /** Type byte of a packed commit. */
+    static final int COMMIT = 1;
+
+    /** Type byte of a packed blob. */
+    static final int BLOB = 2;
+
+    /** Type byte of a blob stored as a delta against another object. */
+    private static final int DELTA = 3;
+
+    /** Type byte of a blob stored as the list of its chunk ids. */
+    private static final int CHUNKS = 4;
+
+    /** Longest allowed chain of deltas. */
+    static final int MAX_DEPTH = 10;
+
+    /** Total size in bytes of the rebuilt bases cached per pack. */
+    private static final int CACHE_LIMIT = 16 * 1024 * 1024;
+
+    /** Magic number opening a .pack file ("PACK"). */
+    private static final int PACK_MAGIC = 0x5041434b;
+
+    /** Magic number opening an .idx file. */
+    private static final int IDX_MAGIC = 0xff744f63;
+
+    /** Current pack format version. */
+    private static final int VERSION = 2;
+
+    /** Version of packs whose objects are all stored uncompressed and
+     *  carry no encoding byte or size. */
+    private static final int UNCOMPRESSED_VERSION = 1;
+
+    /** Size of the .idx header in bytes. */
+    private static final int IDX_HEADER = 12;
+
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+
+    /** Size of the header in front of each packed object. */
+    private static final int ENTRY_HEADER = 10;
+
+    /** Size of the header in front of each object in an uncompressed
+     *  pack. */
+    private static final int UNCOMPRESSED_ENTRY_HEADER = 5;
+
+    /** Largest size in bytes of a .pack file, so that it can be mapped
+     *  whole and every offset in it fits in an int. */
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    /** The pack whose index is IDXFILE. */
+    Pack(File idxFile) {
+        String name = idxFile.getName();
+        _packFile = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        _idx = map(idxFile);
+        _pack = map(_packFile);
+        if (_idx.getInt(0) != IDX_MAGIC || _pack.getInt(0) != PACK_MAGIC
+            || _idx.getInt(4) > VERSION || _pack.getInt(4) > VERSION) {
+            throw Utils.error("Corrupt pack %s.", name);
+        }
+        _version = _pack.getInt(4);
+        _size = _idx.getInt(8);
+        _idsStart = IDX_HEADER + 4 * FANOUT;
+        _offsetsStart = _idsStart + _size * Utils.UID_BYTES;
+    }
+
+    /** Returns the .pack file of this pack. */
+    File packFile() {
+        return _packFile;
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the id of the Kth object in id order. */
+    String idAt(int k) {
+        byte[] id = new byte[Utils.UID_BYTES];
+        ByteBuffer ids = _idx.duplicate();
+        ids.position(_idsStart + k * Utils.UID_BYTES);
+        ids.get(id);
+        return Utils.toHex(id, 0);
+    }
+
+    /** Returns the position in id order of the object with id ID, or -1 if
+     *  this pack does not hold it. */
+    int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : _idx.getInt(IDX_HEADER + 4 * (first - 1));
+        int hi = _idx.getInt(IDX_HEADER + 4 * first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the type (COMMIT or BLOB) of the Kth object. */
+    int type(int k) {
+        int type = rawType(k);
+        return type == DELTA || type == CHUNKS ? BLOB : type;
+    }
+
+    /** Returns the bytes of the Kth object, rebuilding it from its delta
+     *  chain if need be.  Every base rebuilt along the way is cached, so
+     *  that reading later versions of the same file does not rebuild the
+     *  whole chain again. */
+    byte[] read(int k) {
+        ArrayDeque<Integer> chain = new ArrayDeque<>();
+        byte[] result = null;
+        int j = k;
+        while (true) {
+            result = cached(j);
+            if (result != null) {
+                break;
+            }
+            if (rawType(j) == CHUNKS) {
+                result = ObjectStore.readChunks(stored(j));
+                break;
+            } else if (rawType(j) != DELTA) {
+                result = stored(j);
+                break;
+            }
+            chain.push(j);
+            byte[] baseId = new byte[Utils.UID_BYTES];
+            ByteBuffer entry = _pack.duplicate();
+            entry.position(offset(j) + entryHeader());
+            entry.get(baseId);
+            j = find(baseId);
+            if (j < 0) {
+                throw Utils.error("Missing delta base in pack %s.",
+                                  _packFile.getName());
+            }
+        }
+        if (!chain.isEmpty()) {
+            cache(j, result);
+        }
+        while (!chain.isEmpty()) {
+            int d = chain.pop();
+            result = Delta.apply(result, stored(d));
+            cache(d, result);
+        }
+        return result;
+    }
+
+    /** Returns the list of chunk ids of the Kth object, or null if it is
+     *  not stored as chunks. */
+    byte[] chunkList(int k) {
+        return rawType(k) == CHUNKS ? stored(k) : null;
+    }
+
+    /** Writes the Kth object to OUT straight from the mapped pack, if it
+     *  is stored whole and uncompressed.  Returns false, writing nothing,
+     *  if it is not. */
+    boolean transferTo(int k, FileChannel out) throws IOException {
+        int offset = offset(k);
+        int length;
+        if (rawType(k) == DELTA || rawType(k) == CHUNKS) {
+            return false;
+        } else if (_version == UNCOMPRESSED_VERSION) {
+            length = _pack.getInt(offset + 1);
+        } else if (_pack.get(offset + 1) == ObjectStore.RAW) {
+            length = _pack.getInt(offset + 6);
+        } else {
+            return false;
+        }
+        ByteBuffer region = _pack.duplicate();
+        region.position(offset + entryHeader());
+        region.limit(offset + entryHeader() + length);
+        while (region.hasRemaining()) {
+            out.write(region);
+        }
+        return true;
+    }
+
+    /** Returns the type byte stored for the Kth object. */
+    private int rawType(int k) {
+        return _pack.get(offset(k));
+    }
+
+    /** Returns the size of the header in front of each object. */
+    private int entryHeader() {
+        return _version == UNCOMPRESSED_VERSION
+            ? UNCOMPRESSED_ENTRY_HEADER : ENTRY_HEADER;
+    }
+
+    /** Returns the bytes stored for the Kth object, decompressed, and
+     *  without the base id of a delta. */
+    private byte[] stored(int k) {
+        int offset = offset(k);
+        int start = offset + entryHeader();
+        if (rawType(k) == DELTA) {
+            start += Utils.UID_BYTES;
+        }
+        ByteBuffer data = _pack.duplicate();
+        data.position(start);
+        if (_version == UNCOMPRESSED_VERSION) {
+            byte[] result = new byte[_pack.getInt(offset + 1)];
+            data.get(result);
+            return result;
+        }
+        int encoding = _pack.get(offset + 1);
+        byte[] result = new byte[_pack.getInt(offset + 2)];
+        data.limit(start + _pack.getInt(offset + 6));
+        if (encoding == ObjectStore.RAW) {
+            data.get(result);
+            return result;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int n = 0;
+            while (n < result.length && !inflater.finished()) {
+                n += inflater.inflate(result, n, result.length - n);
+                if (inflater.needsInput() && !inflater.finished()) {
+                    break;
+                }
+            }
+            if (n != result.length) {
+                throw Utils.error("Corrupt object in pack %s.",
+                                  _packFile.getName());
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt object in pack %s.",
+                              _packFile.getName());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Returns the cached contents of the Kth object, or null. */
+    private byte[] cached(int k) {
+        synchronized (_cache) {
+            return _cache.get(k);
+        }
+    }
+
+    /** Caches DATA as the contents of the Kth object, evicting the least
+     *  recently used entries to stay within CACHE_LIMIT. */
+    private void cache(int k, byte[] data) {
+        if (data.length > CACHE_LIMIT) {
+            return;
+        }
+        synchronized (_cache) {
+            if (_cache.put(k, data) == null) {
+                _cacheSize += data.length;
+            }
+            Iterator<byte[]> lru = _cache.values().iterator();
+            while (_cacheSize > CACHE_LIMIT && lru.hasNext()) {
+                _cacheSize -= lru.next().length;
+                lru.remove();
+            }
+        }
+    }
+
+    /** Returns the offset in the .pack of the Kth object, which is below
+     *  MAX_SIZE. */
+    private int offset(int k) {
+        long offset = _idx.getLong(_offsetsStart + 8 * k);
+        if (offset < 0 || offset >= _pack.capacity()) {
+            throw Utils.error("Corrupt pack %s.", _packFile.getName());
+        }
+        return (int) offset;
+    }
+
+    /** Compares the id of the Kth object with ID, as unsigned bytes. */
+    private int compareId(int k, byte[] id) {
+        int base = _idsStart + k * Utils.UID_BYTES;
+        for (int i = 0; i < Utils.UID_BYTES; i += 1) {
+            int cmp = (_idx.get(base + i) & 0xff) - (id[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns FILE, which must be at most MAX_SIZE bytes long, mapped
+     *  read-only into memory. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE) {
+                throw Utils.error("Pack %s is too large.", file.getName());
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack %s.", file.getName());
+        }
+    }
+
+    /** Source of the objects written into a new pack. */
+    interface Source {
+        /** Returns the type (COMMIT or BLOB) of the object with id ID. */
+        int type(String id);
+
+        /** Returns the bytes of the object with id ID. */
+        byte[] read(String id);
+
+        /** Returns the list of chunk ids of the object with id ID, or null
+         *  if it is not stored as chunks. */
+        byte[] chunkList(String id);
+
+        /** Returns the id of an object that ID is likely to be a small
+         *  change of, such as the previous version of the same file, or
+         *  null if there is none. */
+        String deltaBase(String id);
+    }
+
+    /** Writes new packs holding the objects whose ids are IDS, in that
+     *  order, fetching each one from SOURCE in turn.  A pack is closed,
+     *  and the next one started, when the next object might take it past
+     *  MAX_SIZE.  A blob is stored as a delta against its suggested base
+     *  when the base was written earlier in the same pack, the chain stays
+     *  within MAX_DEPTH, and the delta is less than half the size of the
+     *  blob.  Objects are compressed at the repository's compression
+     *  level, streaming into the pack.  Each .pack is complete before its
+     *  .idx appears, so readers never see a partial pack.  Returns the new
+     *  packs' index files. */
+    static List<File> write(List<String> ids, Source source) {
+        PACK_DIR.mkdir();
+        int level = Config.compressionLevel();
+        List<File> result = new ArrayList<>();
+        for (int start = 0; start < ids.size(); ) {
+            start = write(ids, start, source, level, result);
+        }
+        return result;
+    }
+
+    /** Writes a new pack holding the objects whose ids are IDS[START ..
+     *  END), fetched from SOURCE and compressed at LEVEL, where END is as
+     *  large as MAX_SIZE allows, and adds its index file to RESULT.
+     *  Returns END. */
+    private static int write(List<String> ids, int start, Source source,
+                             int level, List<File> result) {
+        File packTemp;
+        try {
+            packTemp = File.createTempFile("pack", ".tmp", PACK_DIR);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+        HashMap<String, Long> offsets = new HashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        int end = start;
+        try (FileChannel channel = FileChannel.open(packTemp.toPath(),
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BufferedOutputStream buffer = new BufferedOutputStream(
+                Channels.newOutputStream(channel), ObjectStore.BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);
+            for (; end < ids.size(); end += 1) {
+                String id = ids.get(end);
+                byte[] chunks = source.chunkList(id);
+                byte[] data = chunks != null ? chunks : source.read(id);
+                int type = chunks != null ? CHUNKS : source.type(id);
+                int depth = 0;
+                String base = type == BLOB ? source.deltaBase(id) : null;
+                if (base != null && depths.containsKey(base)
+                    && depths.get(base) < MAX_DEPTH) {
+                    byte[] delta = Delta.create(source.read(base), data);
+                    if (delta.length < data.length / 2) {
+                        data = delta;
+                        type = DELTA;
+                        depth = depths.get(base) + 1;
+                    }
+                }
+                out.flush();
+                long offset = channel.position();
+                if (offset + maxEntrySize(data.length) > MAX_SIZE) {
+                    if (end == start) {
+                        packTemp.delete();
+                        throw Utils.error("Object %s is too large to pack.",
+                                          id);
+                    }
+                    break;
+                }
+                offsets.put(id, offset);
+                if (type != CHUNKS) {
+                    depths.put(id, depth);
+                }
+                out.writeByte(type);
+                out.writeByte(level == 0 ? ObjectStore.RAW
+                              : ObjectStore.DEFLATED);
+                out.writeInt(data.length);
+                out.writeInt(0);
+                if (type == DELTA) {
+                    out.write(Utils.fromHex(base));
+                }
+                int length = writePayload(out, data, level);
+                out.flush();
+                ByteBuffer patch = ByteBuffer.allocate(4).putInt(length);
+                patch.flip();
+                channel.write(patch, offset + 6);
+            }
+            out.flush();
+            ByteBuffer count = ByteBuffer.allocate(4).putInt(end - start);
+            count.flip();
+            channel.write(count, 8);
+        } catch (IOException excp) {
+            packTemp.delete();
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+        List<String> sorted = new ArrayList<>(ids.subList(start, end));
+        Collections.sort(sorted);
+        MessageDigest md = sha1();
+        for (String id : sorted) {
+            md.update(Utils.fromHex(id));
+        }
+        String name = "pack-" + Utils.toHex(md.digest(), 0);
+        File packFile = Utils.join(PACK_DIR, name + ".pack");
+        File idxFile = Utils.join(PACK_DIR, name + ".idx");
+        File idxTemp = Utils.join(PACK_DIR, name + ".idx.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    Files.newOutputStream(idxTemp.toPath())))) {
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            int[] fanout = new int[FANOUT];
+            for (String id : sorted) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+            }
+            int total = 0;
+            for (int n : fanout) {
+                total += n;
+                out.writeInt(total);
+            }
+            for (String id : sorted) {
+                out.write(Utils.fromHex(id));
+            }
+            for (String id : sorted) {
+                out.writeLong(offsets.get(id));
+            }
+        } catch (IOException excp) {
+            packTemp.delete();
+            throw Utils.error("Cannot write pack index: %s",
+                              excp.getMessage());
+        }
+        try {
+            Files.move(packTemp.toPath(), packFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxTemp.toPath(), idxFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot install pack: %s", excp.getMessage());
+        }
+        result.add(idxFile);
+        return end;
+    }
+
+    /** Returns the most bytes that the entry of an object of LENGTH bytes
+     *  can take in a pack, allowing for a delta's base id and for
+     *  compression making the object larger. */
+    private static long maxEntrySize(int length) {
+        return ENTRY_HEADER + Utils.UID_BYTES + length + length / 16 + 64L;
+    }
+
+    /** Writes DATA to OUT, compressed at LEVEL unless LEVEL is 0, through
+     *  a fixed-size buffer.  Returns the number of bytes written. */
+    private static int writePayload(OutputStream out, byte[] data, int level)
+        throws IOException {
+        if (level == 0) {
+            out.write(data);
+            return data.length;
+        }
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+            int total = 0;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+                total += n;
+            }
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Returns a new SHA-1 digester. */
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** The .pack file. */
+    private final File _packFile;
+
+    /** The mapped .idx file. */
+    private final MappedByteBuffer _idx;
+
+    /** The mapped .pack file. */
+    private final MappedByteBuffer _pack;
+
+    /** Format version of the .pack file. */
+    private final int _version;
+
+    /** Number of objects in the pack. */
+    private final int _size;
+
+    /** Offset in the .idx of the sorted ids. */
+    private final int _idsStart;
+
+    /** Offset in the .idx of the object offsets. */
+    private final int _offsetsStart;
+
+    /** Rebuilt delta bases, keyed by position, least recently used
+     *  first. */
+    private final LinkedHashMap<Integer, byte[]> _cache =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size in bytes of the entries of _cache. */
+    private long _cacheSize;
+
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** Bloom filters of the paths a commit changed.  A filter has BITS_PER
+ *  PATH bits for each path, rounded up to whole bytes, and a path sets
+ *  HASHES of them, chosen by double hashing of two MurmurHash3 values of
+ *  the path.  A filter can say that a path was certainly not changed, or
+ *  that it probably was.  A commit that changed no paths has an empty
+ *  filter, and one that changed more than MAX_PATHS has the single byte
+ *  of TOO_MANY, which matches every path.
+ *  @author Mudabbir Khan
+ */
+class PathFilter {
+
+    /** Bits of filter per path. */
+    static final int BITS_PER_PATH = 10;
+
+    /** Number of bits set for each path. */
+    static final int HASHES = 7;
+
+    /** Most paths for which a filter is built. */
+    static final int MAX_PATHS = 512;
+
+    /** The filter standing for too many paths. */
+    static final byte[] TOO_MANY = { (byte) 0xff };
+
+    /** Seed of the first hash. */
+    private static final int SEED1 = 0x293ae76f;
+
+    /** Seed of the second hash. */
+    private static final int SEED2 = 0x7e646e2c;
+
+    /** Returns the filter of the paths PATHS. */
+    static byte[] build(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return TOO_MANY;
+        }
+        byte[] result = new byte[(paths.size() * BITS_PER_PATH + 7) / 8];
+        long bits = 8L * result.length;
+        for (String path : paths) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            int h1 = murmur3(SEED1, key), h2 = murmur3(SEED2, key);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+                result[(int) (bit >>> 3)] |= 1 << (bit & 7);
+            }
+        }
+        return result;
+    }
+
+    /** Returns false if the filter in DATA[START .. START + LENGTH)
+     *  certainly does not hold PATH, and true if it may. */
+    static boolean mayContain(ByteBuffer data, int start, int length,
+                              String path) {
+        if (length == 0) {
+            return false;
+        }
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int h1 = murmur3(SEED1, key), h2 = murmur3(SEED2, key);
+        long bits = 8L * length;
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            if ((data.get(start + (int) (bit >>> 3)) & 1 << (bit & 7)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the 32-bit MurmurHash3 of DATA with seed SEED. */
+    static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+        int h = seed;
+        int blocks = data.length & ~3;
+        for (int i = 0; i < blocks; i += 4) {
+            int k = data[i] & 0xff | (data[i + 1] & 0xff) << 8
+                | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (data.length & 3) {
+        case 3:
+            k ^= (data[blocks + 2] & 0xff) << 16;
+            /* fall through */
+        case 2:
+            k ^= (data[blocks + 1] & 0xff) << 8;
+            /* fall through */
+        case 1:
+            k ^= data[blocks] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            break;
+        default:
+            break;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+}
@@ -0,0 +1,60 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests of changed-path Bloom filters.
+ *  @author Mudabbir Khan
+ */
+public class PathFilterTest {
+
+    /** Returns true iff FILTER may contain PATH. */
+    private static boolean mayContain(byte[] filter, String path) {
+        return PathFilter.mayContain(ByteBuffer.wrap(filter), 0,
+                                     filter.length, path);
+    }
+
+    @Test
+    public void murmur3MatchesReference() {
+        assertEquals(0, PathFilter.murmur3(0, new byte[0]));
+        assertEquals(0x514e28b7, PathFilter.murmur3(1, new byte[0]));
+        assertEquals(0x2e4ff723, PathFilter.murmur3(0,
+            "The quick brown fox jumps over the lazy dog"
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void holdsEveryPathAndFewOthers() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 100; i += 1) {
+            paths.add("dir" + i % 7 + "/file" + i + ".txt");
+        }
+        byte[] filter = PathFilter.build(paths);
+        for (String path : paths) {
+            assertTrue(mayContain(filter, path));
+        }
+        int hits = 0;
+        for (int i = 0; i < 10000; i += 1) {
+            if (mayContain(filter, "other/file" + i + ".txt")) {
+                hits += 1;
+            }
+        }
+        assertTrue(hits < 300);
+    }
+
+    @Test
+    public void emptyAndFullFilters() {
+        assertFalse(mayContain(PathFilter.build(List.of()), "a.txt"));
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i <= PathFilter.MAX_PATHS; i += 1) {
+            many.add("f" + i);
+        }
+        assertTrue(mayContain(PathFilter.build(many), "anything"));
+    }
+
+}
@@ -7,6 +7,7 @@ package gitlet;
 */
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class Registry implements Serializable {
@@ -14,65 +15,229 @@ public class Registry implements Serializable {
     public Registry() {
     }
 
+    /** Returns the Registry saved in the current repository.  Only the
+     *  small refs/HEAD header is read here; commits are loaded from
+     *  .gitlet/commits on demand.  The header is the last checkpoint with
+     *  the journal replayed on top of it.  If the journal has grown past
+     *  its threshold, it is set aside and folded into a new checkpoint in
+     *  the background while the command runs. */
+    public static Registry load() {
+        byte[] data = Utils.readContents(ALL_DATA);
+        Registry r;
+        if (Codec.isLegacy(data)) {
+            r = Utils.readObject(ALL_DATA, Registry.class);
+            r.migrate();
+        } else {
+            r = new Registry();
+            r._commits = CACHE;
+            String[] header = Codec.decodeRegistry(data);
+            r.head = header[0];
+            r.currentBranch = header[1];
+        }
+        if (Journal.needsCompaction() && !Journal.ROTATED.exists()) {
+            Journal.JOURNAL.renameTo(Journal.ROTATED);
+        }
+        if (Journal.ROTATED.exists()) {
+            for (String[] record : Journal.read(Journal.ROTATED)) {
+                r.apply(record);
+            }
+            r.startCompaction();
+        }
+        for (String[] record : Journal.read(Journal.JOURNAL)) {
+            r.apply(record);
+        }
+        return r;
+    }
+
+    /** Writes this Registry's header as a fresh checkpoint. */
+    public void save() {
+        Utils.writeContentsAtomically(ALL_DATA,
+                Codec.encodeRegistry(head, currentBranch));
+    }
+
+    /** Converts a repository saved by Java serialization in the original
+     *  format, whose commits were all read along with this header, to the
+     *  current format: contents move to the object store, each commit is
+     *  rewritten with the codec, and the header is checkpointed. */
+    private void migrate() {
+        for (Commit c : _commits.values()) {
+            Map<String, String> contents = c.getLegacyContents();
+            if (contents != null) {
+                for (Map.Entry<String, String> e : contents.entrySet()) {
+                    ObjectStore.writeBlob(c.getBlobHash(e.getKey()),
+                            e.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            writeCommit(c);
+        }
+        save();
+    }
+
+    /** Reads a header written by Java serialization in the original
+     *  format, in which the header carried every commit.  Reads from IN. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        head = (String) fields.get("head", null);
+        currentBranch = (String) fields.get("currentBranch", null);
+        _commits = (HashMap<String, Commit>) fields.get("_commits", null);
+        if (_commits == null) {
+            _commits = new HashMap<>();
+        }
+    }
+
+    /** Waits for any background compaction to finish.  Must be called
+     *  before the program exits. */
+    public void close() {
+        if (_compaction != null) {
+            try {
+                _compaction.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _compaction = null;
+        }
+    }
+
+    /** Starts a thread that checkpoints the current header, which must
+     *  reflect exactly the records of the rotated journal, and then
+     *  discards that journal. */
+    private void startCompaction() {
+        Registry checkpoint = new Registry();
+        checkpoint.head = head;
+        checkpoint.currentBranch = currentBranch;
+        _compaction = new Thread(() -> {
+            checkpoint.save();
+            Journal.ROTATED.delete();
+        });
+        _compaction.start();
+    }
+
+    /** Applies the journal record RECORD to this header. */
+    private void apply(String[] record) {
+        switch (record[0]) {
+        case "head":
+            head = record[1];
+            break;
+        case "branch":
+            currentBranch = record[1];
+            head = record[2];
+            break;
+        default:
+            throw Utils.error("Unknown journal record: %s", record[0]);
+        }
+    }
+
+    /** Moves HEAD to the commit with id ID, journaling the change. */
+    private void setHead(String id) {
+        Journal.append("head", id);
+        head = id;
+    }
+
+    /** Makes BRANCHNAME, whose head is ID, the current branch, journaling
+     *  the change. */
+    private void switchBranch(String branchName, String id) {
+        Journal.append("branch", branchName, id);
+        currentBranch = branchName;
+        head = id;
+    }
+
+    /** Returns the commit with id ID, loading it from .gitlet/commits if
+     *  it has not been touched yet, or null if there is no such commit. */
+    public Commit getCommit(String id) {
+        if (id == null) {
+            return null;
+        }
+        if (_commits == null) {
+            _commits = new HashMap<>();
+        }
+        Commit c = _commits.get(id);
+        if (c == null) {
+            byte[] data = ObjectStore.readCommit(id);
+            if (data == null) {
+                return null;
+            }
+            c = Codec.readCommit(data);
+            _commits.put(id, c);
+        }
+        return c;
+    }
+
+    /** Writes commit C to its own file under .gitlet/commits. */
+    private void writeCommit(Commit c) {
+        ObjectStore.writeCommit(c.getCommitHash(), Codec.encodeCommit(c));
+        if (_commits != null) {
+            _commits.put(c.getCommitHash(), c);
+        }
+    }
+
+    /** Returns the ids of all commits in the repository. */
+    private List<String> allCommitIds() {
+        return ObjectStore.commitIds();
+    }
+
+    /** Returns the full id of the commit whose id is or starts with
+     *  COMMITID, or null if there is none. */
+    private String resolveId(String commitID) {
+        if (commitID.length() == Utils.UID_LENGTH) {
+            return ObjectStore.containsCommit(commitID) ? commitID : null;
+        }
+        for (String s : allCommitIds()) {
+            if (s.startsWith(commitID)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
     public void init() {
         File gitlet = new File(".gitlet");
         gitlet.mkdir();
-        File staged = new File(".gitlet" + File.separator + "staged");
-        staged.mkdir();
-        File removed = new File(".gitlet" + File.separator + "removed");
-        removed.mkdir();
-        File commits = new File(".gitlet" + File.separator + "commits");
-        commits.mkdir();
+        ObjectStore.COMMITS_DIR.mkdir();
         File branches = new File(".gitlet" + File.separator + "branches");
         branches.mkdir();
+        ObjectStore.OBJECTS_DIR.mkdir();
         Commit init = new Commit(null, "initial commit", null);
         init.setCommitHash();
         head = init.getCommitHash();
-        _commits.put(head, init);
-        File initCommit = new File(".gitlet" + File.separator
-                + "commits" + File.separator + head);
-        Utils.writeObject(initCommit, init);
+        writeCommit(init);
         currentBranch = "master";
-        _branches.put(head, currentBranch);
         File firstBranch = new File(".gitlet" + File.separator
                 + "branches" + File.separator + currentBranch);
         Utils.writeContents(firstBranch, head);
     }
 
     public void add(String fileName) {
+        fileName = WorkTree.path(fileName);
         File addFile = new File(fileName);
-        if (!addFile.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-        }
-        File removeFile = new File(".gitlet" + File.separator
-                + "removed" + File.separator + fileName);
-        if (removeFile.exists()) {
-            removeFile.delete();
+        if (!addFile.isFile()) {
+            throw Utils.error("File does not exist.");
         }
-        Commit parentCommit = _commits.get(head);
+        Commit parentCommit = getCommit(head);
         HashMap<String, String> parentFiles = parentCommit.getBlobs();
-        String fileHash = "blob " + fileName + " " + Utils.readContentsAsString(addFile);
-        byte[] readFile = Utils.readContents(addFile);
-        File stageFile = new File(".gitlet" + File.separator
-                + "staged" + File.separator + fileName);
+        Index index = index();
+        Index.Entry entry = index.get(fileName);
+        String fileHash;
+        if (entry != null && !entry.isRemoved() && !index.isRacy(entry)
+                && entry.size() == addFile.length()
+                && entry.mtime() == addFile.lastModified()) {
+            fileHash = entry.id();
+        } else {
+            fileHash = ObjectStore.writeBlob(fileName, addFile);
+        }
         if (parentFiles != null && parentFiles.get(fileName) != null
-                && parentFiles.get(fileName).equals(Utils.sha1(fileHash))) {
-            if (stageFile.exists()) {
-                stageFile.delete();
-            }
+                && parentFiles.get(fileName).equals(fileHash)) {
+            index.unstage(fileName, fileHash, addFile);
         } else {
-            Utils.writeContents(stageFile, readFile);
+            index.stage(fileName, fileHash, addFile);
         }
+        index.save();
     }
 
     public void commit(String msg) {
-        File stageFile = new File(".gitlet" + File.separator + "staged");
-        File removeFile = new File(".gitlet" + File.separator + "removed");
-        if (Utils.plainFilenamesIn(stageFile) != null
-                && Utils.plainFilenamesIn(stageFile).size() == 0
-                && Utils.plainFilenamesIn(removeFile) != null
-                && Utils.plainFilenamesIn(removeFile).size() == 0) {
+        Index index = index();
+        if (!index.hasChanges()) {
             System.out.println("No changes added to the commit.");
             return;
 
@@ -80,88 +245,127 @@ public class Registry implements Serializable {
             System.out.println("Please enter a commit message.");
             return;
         }
-        Commit newCommit = new Commit(_commits.get(head), msg, null);
-        newCommit.addParentBlobs();
-        newCommit.stageFiles();
-        newCommit.removeFiles();
+        Commit parent = getCommit(head);
+        Commit newCommit = new Commit(parent, msg, null);
+        newCommit.trackIndex(index, parent);
         newCommit.setCommitHash();
-        head = newCommit.getCommitHash();
-        _commits.put(head, newCommit);
-        _branches.put(head, currentBranch);
-        File nextCommit = new File(".gitlet" + File.separator
-                + "commits" + File.separator + head);
-        Utils.writeObject(nextCommit, newCommit);
+        writeCommit(newCommit);
+        index.committed();
+        index.save();
         File newBranch = new File(".gitlet" + File.separator
                 + "branches" + File.separator + currentBranch);
-        Utils.writeContents(newBranch, head);
+        Utils.writeContents(newBranch, newCommit.getCommitHash());
+        setHead(newCommit.getCommitHash());
     }
 
     public void remove(String fileName) {
-        File stageFile = new File(".gitlet" + File.separator
-                + "staged" + File.separator + fileName);
-        File workingFile = new File(fileName);
-        Commit c = _commits.get(head);
-        List<String> trackFiles = c.getBlobNames();
+        fileName = WorkTree.path(fileName);
+        Index index = index();
+        Index.Entry entry = index.get(fileName);
+        boolean staged = entry != null && entry.isStaged();
+        Commit c = getCommit(head);
+        Set<String> trackFiles = c.getBlobNames();
         if (trackFiles != null) {
-            if (!stageFile.exists() && !trackFiles.contains(fileName)) {
-                System.out.println("No reason to remove the file.");
-                System.exit(0);
+            if (!staged && !trackFiles.contains(fileName)) {
+                throw Utils.error("No reason to remove the file.");
             }
         }
-        if (stageFile.exists()) {
-            stageFile.delete();
+        if (staged) {
+            index.forget(fileName);
         }
-        File removeFile = new File(".gitlet" + File.separator
-                + "removed" + File.separator + fileName);
         if (trackFiles != null) {
             if (trackFiles.contains(fileName)) {
-                Utils.writeContents(removeFile, c.getContent(fileName));
-                workingFile.delete();
+                index.markRemoved(fileName, c.getBlobHash(fileName));
+                WorkTree.delete(fileName);
             }
         }
+        index.save();
     }
 
-    public void log() {
-        Commit c = _commits.get(head);
-        while (c != null) {
-            System.out.println("===");
-            System.out.println("commit " + c.getCommitHash());
-            if (c.getMerged() != null) {
-                System.out.println("Merge: " + c.getParent().getCommitHash().substring(0, 7)
-                        + " " + c.getMerged().getCommitHash().substring(0, 7));
-            }
-            System.out.println("Date: " + c.getDateString());
-            System.out.println(c.getMessage());
-            if (c.getParent() != null) {
-                System.out.println();
+    /** Prints the first LIMIT commits of the history of the head commit,
+     *  following first parents, in FORMAT, or in the standard form if
+     *  FORMAT is null.  If PATH is not null, only the commits that changed
+     *  the file or directory PATH relative to their first parents count.
+     *  Reads no commit past the last one printed. */
+    public void log(int limit, LogFormat format, String path) {
+        PrintWriter out = output();
+        if (path != null) {
+            logPath(limit, format, path, out);
+        } else {
+            Commit c = limit > 0 ? getCommit(head) : null;
+            for (int n = 1; c != null; n += 1) {
+                print(c, format, n == 1, out);
+                c = n < limit ? getCommit(c.getParentId()) : null;
             }
-            c = c.getParent();
         }
+        out.flush();
     }
 
-    public void gLog() {
-        boolean first = true;
-        for (String s : _commits.keySet()) {
-            Commit c = _commits.get(s);
-            if (!first) {
-                System.out.println();
+    /** Writes to OUT, in FORMAT, the first LIMIT commits of the first-parent
+     *  history of the head commit that changed PATH.  The history is
+     *  walked in the commit graph, and a commit's trees are compared with
+     *  its parent's only when its path filter says it may have changed
+     *  PATH, so other commits are not read. */
+    private void logPath(int limit, LogFormat format, String path,
+                         PrintWriter out) {
+        CommitGraph graph = graph();
+        int n = 0;
+        for (int row = graph.row(head); row != CommitGraph.NONE && n < limit;
+             row = graph.parent(row)) {
+            if (!graph.mayChange(row, path)) {
+                continue;
+            }
+            Commit c = getCommit(graph.idAt(row));
+            Commit parent = getCommit(c.getParentId());
+            String before = parent == null ? null
+                : Tree.lookup(parent.getTreeId(), path);
+            if (!Objects.equals(before, Tree.lookup(c.getTreeId(), path))) {
+                print(c, format, n == 0, out);
+                n += 1;
             }
-            System.out.println("===");
-            System.out.println("commit " + c.getCommitHash());
-            if (c.getMerged() != null) {
-                System.out.println("Merge: " + c.getParent().getCommitHash().substring(0, 7)
-                        + " " + c.getMerged().getCommitHash().substring(0, 7));
+        }
+    }
+
+    /** Prints the first LIMIT commits in the repository, in no particular
+     *  order, in FORMAT, or in the standard form if FORMAT is null. */
+    public void gLog(int limit, LogFormat format) {
+        PrintWriter out = output();
+        int n = 0;
+        for (String s : allCommitIds()) {
+            if (n == limit) {
+                break;
             }
-            System.out.println("Date: " + c.getDateString());
-            System.out.println(c.getMessage());
-            first = false;
+            print(getCommit(s), format, n == 0, out);
+            n += 1;
         }
+        out.flush();
+    }
+
+    /** Writes to OUT the log entry for commit C in FORMAT, or in the
+     *  standard form, preceded by a blank line unless FIRST, if FORMAT is
+     *  null. */
+    private static void print(Commit c, LogFormat format, boolean first,
+                              PrintWriter out) {
+        if (format != null) {
+            format.print(c, out);
+            return;
+        }
+        if (!first) {
+            out.print('\n');
+        }
+        out.print("===\ncommit " + c.getCommitHash() + "\n");
+        if (c.getMergedId() != null) {
+            out.print("Merge: " + c.getParentId().substring(0, 7)
+                      + " " + c.getMergedId().substring(0, 7) + "\n");
+        }
+        out.print("Date: " + c.getDateString() + "\n");
+        out.print(c.getMessage() + "\n");
     }
 
     public void find(String msg) {
         boolean found = false;
-        for (String s : _commits.keySet()) {
-            Commit c = _commits.get(s);
+        for (String s : allCommitIds()) {
+            Commit c = getCommit(s);
             if (c.getMessage().equals(msg)) {
                 System.out.println(c.getCommitHash());
                 found = true;
@@ -173,7 +377,6 @@ public class Registry implements Serializable {
     }
 
     public void status() {
-        List<String> all = new ArrayList<>();
         System.out.println("=== Branches ===");
         File branches = new File(".gitlet" + File.separator + "branches");
         List<String> branchList = Utils.plainFilenamesIn(branches);
@@ -188,18 +391,16 @@ public class Registry implements Serializable {
         }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        File stageFiles = new File(".gitlet" + File.separator + "staged");
-        List<String> stageList = Utils.plainFilenamesIn(stageFiles);
+        Index index = index();
+        List<String> stageList = index.staged();
         if (stageList != null) {
-            all.addAll(stageList);
             for (String s : stageList) {
                 System.out.println(s);
             }
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        File removeFiles = new File(".gitlet" + File.separator + "removed");
-        List<String> removeList = Utils.plainFilenamesIn(removeFiles);
+        List<String> removeList = index.removed();
         if (removeList != null) {
             for (String s : removeList) {
                 System.out.println(s);
@@ -207,107 +408,111 @@ public class Registry implements Serializable {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-//        Commit c1 = _commits.get(head);
-//
-//        File stagedDir = new File(".gitlet" + File.separator + "staged");
-//        List<String> stagedNames = Utils.plainFilenamesIn(stagedDir);
-//
-//        File removedDir = new File(".gitlet" + File.separator + "removed");
-//        List<String> removedNames = Utils.plainFilenamesIn(removedDir);
-//        File workDir = new File(".");
-//        List<String> workNames = Utils.plainFilenamesIn(workDir);
-//        List<String> commitFileNames = c1.getBlobNames();
-//        if (removedNames != null) {
-//            Collections.sort(removedNames);
-//        }
-//        if (workNames != null) {
-//            Collections.sort(workNames);
-//
-//        }
-//        if (commitFileNames != null) {
-//            Collections.sort(commitFileNames);
-//        }
-//        if (stagedNames != null) {
-//            Collections.sort(stagedNames);
-//        }
-//        if (commitFileNames != null) {
-//            for (String fileName : commitFileNames) {
-//                File f = new File(fileName);
-//                if (workNames != null && workNames.contains(fileName)) {
-//                    String fileHash = "blob " + fileName + " " + Utils.readContentsAsString(f);
-//                    if (!c1.getBlobHash(fileName).equals(fileHash) && ((stagedNames != null
-//                            && !stagedNames.contains(fileName)) || stagedNames == null)) {
-//                        System.out.println(fileName + " (modified)");
-//                    }
-//                } else if (((removedNames != null && !removedNames.contains(fileName)) || removedNames == null)
-//                        && !f.exists()) {
-//                    System.out.println(fileName + " (deleted)");
-//
-//                }
-//            }
-//        }
-//        if (stagedNames != null) {
-//            for (String fileName : stagedNames) {
-//                File f = new File(fileName);
-//                File stage = new File(".gitlet" + File.separator + "staged" + File.separator + fileName);
-//                if (workNames != null && workNames.contains(fileName)) {
-//                    String workHash = "blob " + fileName + " " + Utils.readContentsAsString(f);
-//                    String stageHash = "blob " + fileName + " " + Utils.readContentsAsString(stage);
-//                    if (!stageHash.equals(workHash)) {
-//                        System.out.println(fileName + " (modified)");
-//                    }
-//                } else if (!f.exists()) {
-//                    System.out.println(fileName + " (deleted)");
-//                }
-//            }
-//        }
+        WorkTree.Snapshot snapshot = WorkTree.snapshot(index);
+        for (Map.Entry<String, String> change
+                 : snapshot.changes().entrySet()) {
+            System.out.println(change.getKey() + " (" + change.getValue()
+                               + ")");
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        File untrackedFiles = new File(".");
-        List<String> untrackedList = Utils.plainFilenamesIn(untrackedFiles);
-        Commit c = _commits.get(head);
-        List<String> trackedList = c.getBlobNames();
-        if (trackedList != null) {
-            all.addAll(trackedList);
-        }
-        if (untrackedList != null) {
-            for (String s1 : untrackedList) {
-                if (!all.contains(s1)) {
-                    System.out.println(s1);
+        for (String s : snapshot.untracked()) {
+            System.out.println(s);
+        }
+        System.out.println();
+    }
+
+    /** Prints the differences between two versions of the tracked files as
+     *  a unified diff: the index and the working directory if IDS is
+     *  empty, the commit with id IDS[0] and the working directory if it
+     *  has one element, and the commits IDS[0] and IDS[1] if it has two.
+     *  Files whose versions have the same blob id are skipped unread, and
+     *  working files that the index shows to be unchanged count as their
+     *  staged blobs. */
+    public void diff(String... ids) {
+        Commit[] commits = new Commit[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            commits[i] = getCommit(resolveId(ids[i]));
+            if (commits[i] == null) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+        }
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        if (commits.length == 2) {
+            Tree.diff(commits[0].getTreeId(), commits[1].getTreeId(),
+                (path, oldId, newId) ->
+                    changes.put(path, new String[] { oldId, newId }));
+        } else {
+            Index index = index();
+            Map<String, String> work = new HashMap<>(index.tracked());
+            for (Map.Entry<String, String> change
+                     : WorkTree.snapshot(index).changes().entrySet()) {
+                work.put(change.getKey(),
+                         change.getValue().equals(WorkTree.MODIFIED)
+                         ? WORKING : null);
+            }
+            work.values().removeIf(Objects::isNull);
+            Map<String, String> old = commits.length == 1
+                ? commits[0].getBlobs() : index.tracked();
+            for (Map.Entry<String, String> file : old.entrySet()) {
+                String id = work.get(file.getKey());
+                if (!file.getValue().equals(id)) {
+                    changes.put(file.getKey(),
+                                new String[] { file.getValue(), id });
                 }
             }
+            for (Map.Entry<String, String> file : work.entrySet()) {
+                if (!old.containsKey(file.getKey())) {
+                    changes.put(file.getKey(),
+                                new String[] { null, file.getValue() });
+                }
+            }
+        }
+        PrintWriter out = output();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String path = change.getKey();
+            Diff.unified(path, text(path, change.getValue()[0]),
+                         text(path, change.getValue()[1]), DIFF_CONTEXT,
+                         out);
         }
+        out.flush();
+    }
+
+    /** Returns the contents of version ID of the file PATH: null if ID is
+     *  null, the working copy if it is WORKING, and otherwise the blob
+     *  with that id. */
+    private static String text(String path, String id) {
+        if (id == null) {
+            return null;
+        } else if (id.equals(WORKING)) {
+            return Utils.readContentsAsString(new File(path));
+        }
+        return ObjectStore.readBlobAsString(id);
+    }
+
+    /** Returns a buffered writer on the standard output, to be flushed
+     *  when done. */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+            System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER), false);
     }
 
     public void fileCheckout(String fileName) {
-        Commit c = _commits.get(head);
+        fileName = WorkTree.path(fileName);
+        Commit c = getCommit(head);
         boolean exists = c.getBlobNames().contains(fileName);
         if (exists) {
             File work = new File(fileName);
-            Utils.writeContents(work, c.getContent(fileName));
+            ObjectStore.checkout(c.getBlobHash(fileName), work);
         } else {
             System.out.println("File does not exist in that commit.");
         }
     }
 
     public void checkout(String commitID, String fileName) {
-        String longID = null;
-        Commit c;
-        if (commitID.length() < 40) {
-            String shortID = commitID.substring(0, 7);
-            for (String s : _commits.keySet()) {
-                String shortenID = s.substring(0, 7);
-                if (shortenID.equals(shortID)) {
-                    longID = s;
-                    break;
-                }
-            }
-        }
-        if (longID != null) {
-            c = _commits.get(longID);
-        } else {
-            c = _commits.get(commitID);
-        }
+        fileName = WorkTree.path(fileName);
+        Commit c = getCommit(resolveId(commitID));
         if (c == null) {
             System.out.println("No commit with that id exists.");
             return;
@@ -315,7 +520,7 @@ public class Registry implements Serializable {
         boolean exists = c.getBlobNames().contains(fileName);
         if (exists) {
             File work = new File(fileName);
-            Utils.writeContents(work, c.getContent(fileName));
+            ObjectStore.checkout(c.getBlobHash(fileName), work);
         } else {
             System.out.println("File does not exist in that commit.");
         }
@@ -330,45 +535,10 @@ public class Registry implements Serializable {
                 return;
             }
             String branchHead = Utils.readContentsAsString(branch);
-            File workDir = new File(".");
-            List<String> workFiles = Utils.plainFilenamesIn(workDir);
-            Commit old = _commits.get(branchHead);
-            Commit current = _commits.get(head);
-            List<String> oldFiles = old.getBlobNames();
-            List<String> currentFiles = current.getBlobNames();
-            if (workFiles != null) {
-                for (String s : workFiles) {
-                    if (currentFiles != null && !currentFiles.contains(s)
-                            && oldFiles != null && oldFiles.contains(s)) {
-                        System.out.println("There is an untracked file in the way; delete it or add it first.");
-                        return;
-                    }
-                }
-            }
-            if (oldFiles != null) {
-                for (String s : oldFiles) {
-                    checkout(branchHead, s);
-                }
-            }
-            if (currentFiles != null) {
-                for (String s : currentFiles) {
-                    if (oldFiles != null && !oldFiles.contains(s)) {
-                        File deleteFile = new File(s);
-                        deleteFile.delete();
-                    }
-                }
-            }
-            File stageFile = new File(".gitlet" + File.separator + "staged");
-            List<String> stagedFiles = Utils.plainFilenamesIn(stageFile);
-            if (stagedFiles != null) {
-                for (String s : stagedFiles) {
-                    File removeFile = new File(".gitlet" + File.separator
-                            + "staged" + File.separator + s);
-                    removeFile.delete();
-                }
+            if (!checkoutCommit(getCommit(branchHead))) {
+                return;
             }
-            currentBranch = branchName;
-            head = branchHead;
+            switchBranch(branchName, branchHead);
         } else {
             System.out.println("No such branch exists.");
         }
@@ -381,7 +551,6 @@ public class Registry implements Serializable {
             System.out.println("A branch with that name already exists.");
         } else {
             Utils.writeContents(addBranch, head);
-            _branches.put(head, branchName);
         }
     }
 
@@ -398,87 +567,118 @@ public class Registry implements Serializable {
     }
 
     public void reset(String commitID) {
-        String longID = null;
-        Commit oldCommit;
-        if (commitID.length() < 40) {
-            String shortID = commitID.substring(0, 7);
-            for (String s : _commits.keySet()) {
-                String shortenID = s.substring(0, 7);
-                if (shortenID.equals(shortID)) {
-                    longID = s;
-                    break;
-                }
-            }
-        }
-        if (longID != null) {
-            oldCommit = _commits.get(longID);
-        } else {
-            oldCommit = _commits.get(commitID);
-        }
+        String longID = resolveId(commitID);
+        Commit oldCommit = getCommit(longID);
         if (oldCommit == null) {
             System.out.println("No commit with that id exists.");
             return;
         }
-        Commit currentCommit = _commits.get(head);
-        File workDir = new File(".");
-        List<String> workFiles = Utils.plainFilenamesIn(workDir);
-        List<String> oldFiles = oldCommit.getBlobNames();
-        List<String> currentFiles = currentCommit.getBlobNames();
-        if (workFiles != null) {
-            for (String s : workFiles) {
-                if (currentFiles != null && !currentFiles.contains(s) && oldFiles != null && oldFiles.contains(s)) {
-                    System.out.println("There is an untracked file in the way; delete it or add it first.");
-                    return;
-                }
-            }
+        if (!checkoutCommit(oldCommit)) {
+            return;
         }
-        if (oldFiles != null) {
-            for (String s : oldFiles) {
-                if (longID != null) {
-                    checkout(longID, s);
+        File branch = new File(".gitlet" + File.separator
+                + "branches" + File.separator + currentBranch);
+        Utils.writeContents(branch, longID);
+        setHead(longID);
+    }
+
+    /** Replaces the files of the head commit in the working directory by
+     *  those of TARGET and resets the index to TARGET.  Only the files
+     *  that differ between the two commits' trees are deleted or written,
+     *  along with those whose working copies or index entries differ from
+     *  the head commit, which checking out discards.  Returns false,
+     *  changing nothing, if an untracked file is in the way. */
+    private boolean checkoutCommit(Commit target) {
+        Index index = index();
+        WorkTree.Snapshot snapshot = WorkTree.snapshot(index);
+        TreeSet<String> workFiles = snapshot.files();
+        Checkout plan = new Checkout();
+        List<String> added = new ArrayList<>();
+        Set<String> deleted = new HashSet<>();
+        Tree.diff(getCommit(head).getTreeId(), target.getTreeId(),
+            (path, oldId, newId) -> {
+                if (newId == null) {
+                    plan.delete(path);
+                    deleted.add(path);
                 } else {
-                    checkout(commitID, s);
+                    if (oldId == null) {
+                        added.add(path);
+                    }
+                    plan.write(path, newId);
                 }
+            });
+        for (String path : added) {
+            if (inTheWay(path, workFiles, deleted)) {
+                System.out.println("There is an untracked file in the way; delete it or add it first.");
+                return false;
             }
         }
-        if (currentFiles != null) {
-            for (String s : currentFiles) {
-                if (oldFiles != null && !oldFiles.contains(s)) {
-                    File deleteFile = new File(s);
-                    deleteFile.delete();
-                }
+        Map<String, String> targetFiles = target.getBlobs();
+        for (Index.Entry entry : index.entries()) {
+            String id = targetFiles.get(entry.path());
+            if (id != null && (entry.flags() != 0
+                               || snapshot.changes().containsKey(entry.path()))) {
+                plan.write(entry.path(), id);
             }
         }
-        File stageFile = new File(".gitlet" + File.separator + "staged");
-        List<String> stagedFiles = Utils.plainFilenamesIn(stageFile);
-        if (stagedFiles != null) {
-            for (String s : stagedFiles) {
-                File removeFile = new File(".gitlet" + File.separator
-                        + "staged" + File.separator + s);
-                removeFile.delete();
+        plan.run();
+        index.reset(target, plan.written());
+        index.save();
+        return true;
+    }
+
+    /** Returns true iff adding the file PATH would disturb a file of the
+     *  working directory, whose files are WORKFILES, that checking out
+     *  does not delete, the deleted files being DELETED: a file at PATH,
+     *  a file where PATH needs a directory, or a directory at PATH that
+     *  the deletions do not empty. */
+    private static boolean inTheWay(String path, TreeSet<String> workFiles,
+                                    Set<String> deleted) {
+        if (workFiles.contains(path)) {
+            return true;
+        }
+        for (int k = path.indexOf('/'); k >= 0; k = path.indexOf('/', k + 1)) {
+            String dir = path.substring(0, k);
+            if (workFiles.contains(dir) && !deleted.contains(dir)) {
+                return true;
             }
         }
-        File branch = new File(".gitlet" + File.separator
-                + "branches" + File.separator + currentBranch);
-        if (longID != null) {
-            head = longID;
-            Utils.writeContents(branch, head);
-            _branches.put(head, currentBranch);
-        } else {
-            head = commitID;
-            Utils.writeContents(branch, head);
-            _branches.put(head, currentBranch);
+        if (new File(path).isDirectory()) {
+            SortedSet<String> below =
+                workFiles.subSet(path + "/", path + "/" + Character.MAX_VALUE);
+            return below.isEmpty() || !deleted.containsAll(below);
         }
+        return false;
+    }
+
+    /** Consolidates the repository's loose objects into a pack. */
+    public void pack() {
+        ObjectStore.pack();
+    }
+
+    /** Deletes the commits and blobs that neither the head, nor any
+     *  branch, nor the staging area can reach, and packs the rest.  Loose
+     *  objects and packs younger than the configured grace period are
+     *  kept. */
+    public void gc() {
+        List<String> staged = new ArrayList<>();
+        for (Index.Entry entry : index().entries()) {
+            staged.add(entry.id());
+        }
+        Set<String> live = Collector.mark(tips(), staged);
+        ObjectStore.sweep(live, Config.gracePeriod());
+        if (_commits != null) {
+            _commits.keySet().retainAll(live);
+        }
+        CommitGraph.clear();
+        _graph = null;
+        MergeBase.clear();
     }
 
     public void merge(String branchName) {
-        File staged = new File(".gitlet" + File.separator + "staged");
-        List<String> s = Utils.plainFilenamesIn(staged);
-        File removed = new File(".gitlet" + File.separator + "removed");
-        List<String> r = Utils.plainFilenamesIn(removed);
-        if (!s.isEmpty() || !r.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+        Index index = index();
+        if (index.hasChanges()) {
+            throw Utils.error("You have uncommitted changes.");
         }
         File branchPointer = new File(".gitlet" + File.separator
                 + "branches" + File.separator + branchName);
@@ -487,8 +687,7 @@ public class Registry implements Serializable {
             return;
         }
         if (currentBranch.equals(branchName)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw Utils.error("Cannot merge a branch with itself.");
         }
 
         // FIXME? merge generates error with commit that has no changes
@@ -497,33 +696,28 @@ public class Registry implements Serializable {
                 + "branches" + File.separator + branchName);
         String newCommitHash = Utils.readContentsAsString(branchFile);
 
-        Commit newCommit = _commits.get(newCommitHash);
-        Commit currCommit = _commits.get(head);
-
-        File w = new File(".");
-        List<String> workingDirFileNames = Utils.plainFilenamesIn(w);
-        List<String> newCommitFiles = newCommit.getBlobNames();
-        List<String> currTracked = currCommit.getBlobNames();
+        Commit newCommit = getCommit(newCommitHash);
+        Commit currCommit = getCommit(head);
 
-        if (workingDirFileNames != null) {
-            for (String f : workingDirFileNames) {
-                if (currTracked != null && !currTracked.contains(f) && newCommitFiles != null && newCommitFiles.contains(f)) {
-                    System.out.println("There is an untracked file in the way; delete it or add it first.");
-                    System.exit(0);
+        Set<String> workingDirFileNames =
+            new HashSet<>(WorkTree.snapshot(index).files());
+        Tree.diff(currCommit.getTreeId(), newCommit.getTreeId(),
+            (f, currId, newId) -> {
+                if (currId == null && newId != null
+                    && workingDirFileNames.contains(f)) {
+                    throw Utils.error("There is an untracked file in the way; delete it or add it first.");
                 }
-            }
-        }
+            });
 
         // if the split point is the same commit as the given branch, then we do nothing; the merge is complete,
         // and the operation ends with the message
         // Given branch is an ancestor of the current branch.
-        String splitSha1 = splitPoint(currCommit, newCommit);
-        Commit splitCommit = _commits.get(splitSha1);
         File givenBranchFile = new File(".gitlet" + File.separator
                 + "branches" + File.separator + branchName);
         String givenBranchHash = Utils.readContentsAsString(givenBranchFile);
-        Commit givenBranch = _commits.get(givenBranchHash);
-        if (givenBranchHash.equals(splitSha1)) {
+        Commit givenBranch = getCommit(givenBranchHash);
+        CommitGraph graph = graph();
+        if (graph.isAncestor(givenBranchHash, head)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
         }
@@ -535,207 +729,42 @@ public class Registry implements Serializable {
         File currBranchFile = new File(".gitlet" + File.separator
                 + "branches" + File.separator + currentBranch);
         String currBranch = Utils.readContentsAsString(currBranchFile);
-        if (splitSha1.equals(currBranch)) {
+        if (graph.isAncestor(currBranch, givenBranchHash)) {
+            if (!checkoutCommit(givenBranch)) {
+                return;
+            }
             Utils.writeContents(currBranchFile, givenBranchHash);
-            head = givenBranchHash;
+            setHead(givenBranchHash);
             System.out.println("Current branch fast-forwarded.");
             return;
         }
+        String splitSha1 = splitPoint(currCommit, newCommit);
+        Commit splitCommit = getCommit(splitSha1);
 
-//        "modified in the given branch since the split point"
-
-//        Any files that have been modified in the given branch since the split point, but not modified in the
-// current branch since the split point should be changed to their versions in the given branch
-// (checked out from the commit at the front of the given branch). These files should then all be automatically staged.
-// To clarify, if a file is "modified in the given branch since the split point" this means the version of the file
-// as it exists in the commit at the front of the given branch has different content from the version of the file
-// at the split point.
-        List<String> givenBranchFiles = givenBranch.getBlobNames();
-        List<String> splitCommitFiles = splitCommit.getBlobNames();
-        for (String f : splitCommitFiles) {
-            if (givenBranch.getBlobNames().contains(f) && splitCommit.getBlobNames().contains(f)
-                    && currCommit.getBlobNames().contains(f)
-                    && !givenBranch.getBlobHash(f).equals(splitCommit.getBlobHash(f))
-                    && (currCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))) {
-                //System.out.println("Making it here");
-                checkout(givenBranchHash, f);
-                File stagedF = new File(".gitlet" + File.separator + "staged" + File.separator + f);
-                File file = new File(f);
-                Utils.writeContents(file, givenBranch.getContent(f));
-                Utils.writeContents(stagedF, givenBranch.getContent(f));
-            }
-        }
-
-
-//        Any files that have been modified in the current branch but not in the given branch since the split point
-// should stay as they are.
-        for (String f : splitCommitFiles) {
-            if (givenBranch.getBlobNames().contains(f) && splitCommit.getBlobNames().contains(f)
-                    && currCommit.getBlobNames().contains(f)
-                    && givenBranch.getBlobHash(f).equals(splitCommit.getBlobHash(f))
-                    && !currCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f))) {
-                File file = new File(f);
-                Utils.writeContents(file, currCommit.getContent(f));
-            }
-        }
-
-//        Any files that have been modified in both the current and given branch in the same way
-// (i.e., both to files with the same content or both removed) are left unchanged by the merge.
-// In particular, if a file is removed in both, but a file of that name is present in the working directory,
-// that file is not removed from the working directory.
-        for (String f : splitCommitFiles) {
-            if (splitCommit.getBlobNames().contains(f)
-                    && givenBranch.getBlobNames().contains(f)
-                    && currCommit.getBlobNames().contains(f)
-                    && !splitCommit.getBlobHash(f).equals(givenBranch.getBlobHash(f))
-                    && !splitCommit.getBlobHash(f).equals(currCommit.getBlobHash(f))
-                    && currCommit.getBlobHash(f).equals(givenBranch.getBlobHash(f))) {
-                File file = new File(f);
-                Utils.writeContents(file, currCommit.getContent(f));
-            }
-        }
-        File work = new File(".");
-        List<String> workFiles = Utils.plainFilenamesIn(work);
-        for (String f : splitCommitFiles) {
-            if (splitCommit.getBlobNames().contains(f)
-                    && !givenBranch.getBlobNames().contains(f)
-                    && !currCommit.getBlobNames().contains(f)
-                    && workFiles != null && workFiles.contains(f)) {
-                File file = new File(f);
-                Utils.writeContents(file, Utils.readContents(file));
-            }
-        }
-//        Any files that were not present at the split point and are present only in the current branch should
-// remain as they are.
-        for (String f : currCommit.getBlobNames()) {
-            if (!splitCommit.getBlobNames().contains(f) && !givenBranch.getBlobNames().contains(f)
-                    && currCommit.getBlobNames().contains(f)) {
-                File file = new File(f);
-                Utils.writeContents(file, currCommit.getContent(f));
-            }
-        }
-
-//        Any files that were not present at the split point and are present only in the given branch should
-// be checked out and staged.
-        for (String f : givenBranchFiles) {
-            if (!splitCommit.getBlobNames().contains(f) && givenBranch.getBlobNames().contains(f)
-                    && !currCommit.getBlobNames().contains(f)) {
-                checkout(givenBranch.getCommitHash(), f);
-                File stagedF = new File(".gitlet" + File.separator + "staged" + File.separator + f);
-                Utils.writeContents(stagedF, givenBranch.getContent(f));
-            }
-        }
-
-
-//        Any files present at the split point, unmodified in the current branch,
-// and absent in the given branch should be removed (and untracked).
-        for (String f : splitCommitFiles) {
-            if (splitCommit.getBlobNames().contains(f) && currCommit.getBlobNames().contains(f)
-                    && !givenBranch.getBlobNames().contains(f)
-                    && splitCommit.getBlobHash(f).equals(currCommit.getBlobHash(f))) {
-                File file = new File(f);
-                File removeFile = new File(".gitlet" + File.separator + "removed" + File.separator + f);
-                Utils.writeContents(removeFile, currCommit.getContent(f));
-                file.delete();
-            }
-        }
-
-
-//        Any files present at the split point, unmodified in the given branch, and absent in the current branch
-// should remain absent.
-
-
-//        "Modified in different ways" can mean that the contents of both are changed and different from other,
-// or the contents of one are changed and the other is deleted, or the file was absent at the split point and have
-// different contents in the given and current branches.
-        TreeSet<String> all = new TreeSet<>();
-        all.addAll(currCommit.getBlobNames()); all.addAll(givenBranch.getBlobNames());
-        all.addAll(splitCommit.getBlobNames());
-        boolean conflict = false;
-        for (String f : all) {
-            if (newCommit.getBlobNames().contains(f) && currCommit.getBlobNames().contains(f)
-                    && splitCommit.getBlobNames().contains(f)
-                    && (!currCommit.getBlobHash(f).equals(newCommit.getBlobHash(f)))
-                    && (!currCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))
-                    && (!newCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))) {
-                conflict = true;
-                writeConflictingContents(currCommit, givenBranch, f);
-
-            } else if (currCommit.getBlobNames().contains(f) && splitCommit.getBlobNames().contains(f)
-                    && !newCommit.getBlobNames().contains(f)
-                    && (!currCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))) {
-                conflict = true;
-                writeConflictingContents(currCommit, givenBranch, f);
-            } else if (newCommit.getBlobNames().contains(f) && splitCommit.getBlobNames().contains(f)
-                    && !currCommit.getBlobNames().contains(f)
-                    && (!newCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))) {
-                conflict = true;
-                writeConflictingContents(currCommit, givenBranch, f);
-            } else if (newCommit.getBlobNames().contains(f) && currCommit.getBlobNames().contains(f)
-                    && !splitCommit.getBlobNames().contains(f)
-                    && (!newCommit.getBlobHash(f).equals(currCommit.getBlobHash(f)))) {
-                conflict = true;
-                writeConflictingContents(currCommit, givenBranch, f);
-            }
-        }
-
-//        for (String f : newCommit.getBlobNames()) {
-//            if (newCommit.getBlobNames().contains(f) && currCommit.getBlobNames().contains(f)
-//                    && splitCommit.getBlobNames().contains(f)
-//                    && (!currCommit.getBlobHash(f).equals(newCommit.getBlobHash(f)))
-//                    && (!currCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))
-//                    && (!newCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))) {
-//                conflict = true;
-//                writeConflictingContents(currCommit, givenBranch, f);
-//            } else if (currCommit.getBlobNames().contains(f) && splitCommit.getBlobNames().contains(f)
-//                    && (!currCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))
-//                    && !newCommit.getBlobNames().contains(f)) {
-//                conflict = true;
-//                writeConflictingContents(currCommit, givenBranch, f);
-//            } else if (newCommit.getBlobNames().contains(f) && splitCommit.getBlobNames().contains(f)
-//                    && (!newCommit.getBlobHash(f).equals(splitCommit.getBlobHash(f)))
-//                    && !currCommit.getBlobNames().contains(f)) {
-//                conflict = true;
-//                writeConflictingContents(currCommit, givenBranch, f);
-//            } else if (newCommit.getBlobNames().contains(f) && currCommit.getBlobNames().contains(f)
-//                    && (!newCommit.getBlobHash(f).equals(currCommit.getBlobHash(f)))
-//                    && !splitCommit.getBlobNames().contains(f) ) {
-//                conflict = true;
-//                writeConflictingContents(currCommit, givenBranch, f);
-//            }
-//        }
-        File stageFile = new File(".gitlet" + File.separator + "staged");
-        File removeFile = new File(".gitlet" + File.separator + "removed");
-        if (Utils.plainFilenamesIn(stageFile) != null
-                && Utils.plainFilenamesIn(stageFile).size() == 0
-                && Utils.plainFilenamesIn(removeFile) != null
-                && Utils.plainFilenamesIn(removeFile).size() == 0) {
+        Merge merge = new Merge(splitCommit, currCommit, givenBranch);
+        merge.apply(index);
+        boolean conflict = merge.hasConflicts();
+        if (!index.hasChanges()) {
             System.out.println("No changes added to the commit.");
             return;
         }
         Commit a = new Commit(currCommit, "Merged "
                 + branchName + " into " + currentBranch + ".",
                 newCommit);
-        a.addParentBlobs();
-        a.stageFiles();
-        a.removeFiles();
+        a.trackIndex(index, currCommit);
         a.setCommitHash();
-        head = a.getCommitHash();
-        _branches.put(head, currentBranch);
-        _commits.put(head, a);
+        writeCommit(a);
+        index.committed();
+        index.save();
 
         // the branch name holds the sha1 value of the commit it points to
         File masterBranch = new File(".gitlet" + File.separator
                 + "branches" + File.separator + currentBranch);
-        Utils.writeContents(masterBranch, head);
+        Utils.writeContents(masterBranch, a.getCommitHash());
         File otherBranch = new File(".gitlet" + File.separator
                 + "branches" + File.separator + branchName);
-        Utils.writeContents(otherBranch, head);
-
-        // writes the commit object to a file where it's name is it's sha1 value
-        File commitFile = new File(".gitlet" + File.separator
-                + "commits" + File.separator + head);
-        Utils.writeObject(commitFile, a);
+        Utils.writeContents(otherBranch, a.getCommitHash());
+        setHead(a.getCommitHash());
 
         //commit("Merged " + givenBranchHash.substring(0, 7) + " into " + currBranch.substring(0, 7) + ".");
 
@@ -747,67 +776,87 @@ public class Registry implements Serializable {
 
     }
 
-    public void writeConflictingContents(Commit currCommit, Commit givenBranch, String f) {
-        File file = new File(f);
-        File stagedF = new File(".gitlet" + File.separator
-                + "staged" + File.separator + f);
-        if (!currCommit.getBlobNames().contains(f)) {
-            Utils.writeContents(file, "<<<<<<< HEAD\n"
-                    + ""
-                    + "=======\n"
-                    + givenBranch.getContent(f)
-                    + ">>>>>>>");
-        } else if (!givenBranch.getBlobNames().contains(f)) {
-            Utils.writeContents(file, "<<<<<<< HEAD\n"
-                    + currCommit.getContent(f)
-                    + "=======\n"
-                    + ""
-                    + ">>>>>>>");
-        } else {
-            Utils.writeContents(file, "<<<<<<< HEAD\n"
-                    + currCommit.getContent(f)
-                    + "=======\n"
-                    + givenBranch.getContent(f)
-                    + ">>>>>>>");
-        }
-        Utils.writeContents(stagedF, Utils.readContents(file));
-//        if (currCommit.getBlobNames().contains(f)) {
-//            currCommit.getBlobContent().put(f, Utils.readContentsAsString(file));
-//        }
-        // If conflicted file exists in both
-//        if (givenBranch.getFileContents().containsKey(f)) {
-//            givenBranch.getFileContents().put(f, Utils.readContents(file));
-//        }
-    }
-
-    public static String splitPoint(Commit c1, Commit c2) {
-        while (c1.getParent() != null || c2.getParent() != null) {
-            if (!c1.getCommitHash().equals(c2.getCommitHash())) {
-                if (c1.getDate().before(c2.getDate())) {
-                    c2 = c2.getParent();
-                } else {
-                    c1 = c1.getParent();
-                }
-            } else {
-                return c1.getCommitHash();
-            }
+    /** Returns the id of the split point of C1 and C2: their best common
+     *  ancestor, following both parents of merges. */
+    public String splitPoint(Commit c1, Commit c2) {
+        return MergeBase.find(graph(), c1.getCommitHash(),
+                              c2.getCommitHash());
+    }
+
+    /** Returns the staging index, reading it on first use. */
+    private Index index() {
+        if (_index == null) {
+            _index = Index.load(getCommit(head));
         }
-        if (c1.getParent() == null) {
-            return c1.getCommitHash();
-        } else {
-            return c2.getCommitHash();
+        return _index;
+    }
+
+    /** Returns the commit graph, brought up to date with the head and
+     *  every branch. */
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.update(tips());
+        }
+        return _graph;
+    }
+
+    /** Returns the ids of the head commit and of the commit at the front
+     *  of every branch. */
+    private List<String> tips() {
+        List<String> tips = new ArrayList<>();
+        tips.add(head);
+        File branches = Utils.join(".gitlet", "branches");
+        for (String name : Utils.plainFilenamesIn(branches)) {
+            tips.add(Utils.readContentsAsString(Utils.join(branches, name)));
         }
+        return tips;
     }
 
-    /** Maps commit's hash value to its corresponding commit. */
-    private HashMap<String, Commit> _commits = new HashMap<>();
+    /** Lines of context around each change in a diff. */
+    private static final int DIFF_CONTEXT = 3;
 
-    /** Maps head to it's branch name. */
-    private HashMap<String, String> _branches = new HashMap<>();
+    /** Stands for the unhashed contents of a working file in a diff. */
+    private static final String WORKING = "";
+
+    /** Size of the buffer of output(). */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Serial version of the original serialized format. */
+    private static final long serialVersionUID = -1255880920680296362L;
+
+    /** File holding the saved Registry header. */
+    static final File ALL_DATA = Utils.join(".gitlet", "AllData");
+
+    /** Most commits kept in CACHE. */
+    private static final int CACHE_LIMIT = 4096;
+
+    /** The commits most recently loaded by any command run in this
+     *  process, keyed by id, least recently used first.  Commits never
+     *  change, so a daemon keeps them from one command to the next. */
+    private static final LinkedHashMap<String, Commit> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Commit> e) {
+                return size() > CACHE_LIMIT;
+            }
+        };
+
+    /** Cache of the commits loaded so far, keyed by id.  Never saved with
+     *  the header. */
+    private transient HashMap<String, Commit> _commits = new HashMap<>();
 
     /** The branch of the current commit. */
     private String currentBranch;
 
     /** The current commit's hash value. */
     private String head;
+
+    /** The staging index, or null if not read yet. */
+    private transient Index _index;
+
+    /** The commit graph, or null if not loaded yet. */
+    private transient CommitGraph _graph;
+
+    /** Thread writing a checkpoint in the background, if any. */
+    private transient Thread _compaction;
 }
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** A directory of a commit: the names of its files and subdirectories,
+ *  sorted, each with the id of its blob or of its own tree.  A tree is
+ *  stored in the object store under the hash of its encoding, so the
+ *  commit's root tree id stands for every file below it, and a directory
+ *  whose tree id is the same in two commits holds the same files in
+ *  both.  Building a commit's trees therefore only writes the trees of
+ *  directories with something staged, and comparing two commits only
+ *  descends into the subtrees whose ids differ.  Paths are relative to
+ *  the working directory, with components separated by '/'.
+ *  @author Mudabbir Khan
+ */
+class Tree {
+
+    /** Kind of an entry naming a file. */
+    static final int BLOB = 1;
+
+    /** Kind of an entry naming a subdirectory. */
+    static final int TREE = 2;
+
+    /** Receives the differences found between two trees. */
+    interface Visitor {
+        /** Notes that the file PATH has blob OLDID in the first tree and
+         *  blob NEWID in the second, either of which is null if the file
+         *  is absent from that tree. */
+        void changed(String path, String oldId, String newId);
+    }
+
+    /** Returns the id of the root tree of the files FILES, a map of paths
+     *  to blob ids, storing all the trees. */
+    static String write(Map<String, String> files) {
+        return build("", null, new TreeMap<>(files), id -> id, null);
+    }
+
+    /** Returns the id of the root tree of the files in INDEX that are not
+     *  staged for removal, storing the trees that are new.  BASE is the
+     *  root tree of the head commit, whose files are those in INDEX with
+     *  nothing staged; the subtrees of BASE for directories with nothing
+     *  staged below them are reused without being read. */
+    static String write(Index index, String base) {
+        Set<String> dirty = new HashSet<>();
+        for (Index.Entry entry : index.entries()) {
+            if (entry.flags() != 0) {
+                String path = entry.path();
+                dirty.add("");
+                for (int k = path.indexOf('/'); k >= 0;
+                     k = path.indexOf('/', k + 1)) {
+                    dirty.add(path.substring(0, k + 1));
+                }
+            }
+        }
+        return build("", base, index.entryMap(),
+                     entry -> entry.isRemoved() ? null : entry.id(), dirty);
+    }
+
+    /** Returns the tree with id ID. */
+    static Tree read(String id) {
+        return Codec.decodeTree(ObjectStore.readBlob(id));
+    }
+
+    /** Returns the blob ids of all files below the tree with id ID, keyed
+     *  by path. */
+    static HashMap<String, String> files(String id) {
+        HashMap<String, String> result = new HashMap<>();
+        collect("", id, result);
+        return result;
+    }
+
+    /** Returns the id of the blob or tree at PATH, a file or directory,
+     *  below the tree with id ID, which may be null for an empty tree, or
+     *  null if there is nothing at PATH.  Reads only the trees along
+     *  PATH. */
+    static String lookup(String id, String path) {
+        int start = 0;
+        while (id != null) {
+            int slash = path.indexOf('/', start);
+            String name = slash < 0 ? path.substring(start)
+                : path.substring(start, slash);
+            Tree tree = read(id);
+            if (slash < 0) {
+                return tree.id(name);
+            } else if (!tree.isTree(name)) {
+                return null;
+            }
+            id = tree.id(name);
+            start = slash + 1;
+        }
+        return null;
+    }
+
+    /** Reports to VISITOR every file whose blob differs between the trees
+     *  with ids A and B, either of which may be null for an empty tree,
+     *  directory by directory.  Subtrees with the same id are skipped. */
+    static void diff(String a, String b, Visitor visitor) {
+        diff("", a, b, visitor);
+    }
+
+    /** Returns the names of the entries, in order. */
+    SortedSet<String> names() {
+        return Collections.unmodifiableSortedSet(_ids.navigableKeySet());
+    }
+
+    /** Returns the id of the blob or tree of entry NAME, or null if there
+     *  is no such entry. */
+    String id(String name) {
+        return _ids.get(name);
+    }
+
+    /** Returns true iff NAME is a subdirectory. */
+    boolean isTree(String name) {
+        return _trees.contains(name);
+    }
+
+    /** Adds entry NAME of kind KIND with blob or tree id ID. */
+    void put(String name, int kind, String id) {
+        _ids.put(name, id);
+        if (kind == TREE) {
+            _trees.add(name);
+        } else {
+            _trees.remove(name);
+        }
+    }
+
+    /** Stores this tree and returns its id. */
+    String write() {
+        byte[] data = Codec.encodeTree(this);
+        String id = Utils.sha1("tree ", data);
+        ObjectStore.writeBlob(id, data);
+        return id;
+    }
+
+    /** Returns the id of the tree of the directory DIR, which is "" or
+     *  ends in '/', holding the files FILES whose paths start with DIR.
+     *  IDOF gives the blob id of a file's value in FILES, or null if the
+     *  file is to be left out.  BASE is the directory's previous tree or
+     *  null, and is reused unless DIRTY, when not null, contains DIR.
+     *  Returns null for an empty directory other than the root. */
+    private static <T> String build(String dir, String base,
+                                    NavigableMap<String, T> files,
+                                    Function<T, String> idOf,
+                                    Set<String> dirty) {
+        if (base != null && dirty != null && !dirty.contains(dir)) {
+            return base;
+        }
+        Tree old = base == null ? null : read(base);
+        Tree tree = new Tree();
+        String path = files.ceilingKey(dir);
+        while (path != null && path.startsWith(dir)) {
+            int slash = path.indexOf('/', dir.length());
+            if (slash < 0) {
+                String id = idOf.apply(files.get(path));
+                if (id != null) {
+                    tree.put(path.substring(dir.length()), BLOB, id);
+                }
+                path = files.higherKey(path);
+            } else {
+                String name = path.substring(dir.length(), slash);
+                String sub = path.substring(0, slash + 1);
+                String id = build(sub, old != null && old.isTree(name)
+                                  ? old.id(name) : null,
+                                  files, idOf, dirty);
+                if (id != null) {
+                    tree.put(name, TREE, id);
+                }
+                path = files.ceilingKey(sub + Character.MAX_VALUE);
+            }
+        }
+        if (tree._ids.isEmpty() && !dir.isEmpty()) {
+            return null;
+        }
+        return tree.write();
+    }
+
+    /** Adds to RESULT the files below the tree with id ID, which is that
+     *  of the directory DIR. */
+    private static void collect(String dir, String id,
+                                Map<String, String> result) {
+        Tree tree = read(id);
+        for (String name : tree.names()) {
+            if (tree.isTree(name)) {
+                collect(dir + name + "/", tree.id(name), result);
+            } else {
+                result.put(dir + name, tree.id(name));
+            }
+        }
+    }
+
+    /** Reports to VISITOR the differences between the trees with ids A
+     *  and B, either possibly null, of the directory DIR. */
+    private static void diff(String dir, String a, String b,
+                             Visitor visitor) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree x = a == null ? new Tree() : read(a);
+        Tree y = b == null ? new Tree() : read(b);
+        TreeSet<String> names = new TreeSet<>(x.names());
+        names.addAll(y.names());
+        for (String name : names) {
+            String path = dir + name;
+            String oldTree = x.isTree(name) ? x.id(name) : null;
+            String newTree = y.isTree(name) ? y.id(name) : null;
+            String oldBlob = oldTree == null ? x.id(name) : null;
+            String newBlob = newTree == null ? y.id(name) : null;
+            if (!Objects.equals(oldBlob, newBlob)) {
+                visitor.changed(path, oldBlob, newBlob);
+            }
+            diff(path + "/", oldTree, newTree, visitor);
+        }
+    }
+
+    /** The blob or tree id of each entry, keyed by name. */
+    private final TreeMap<String, String> _ids = new TreeMap<>();
+
+    /** The names of the entries that are subdirectories. */
+    private final HashSet<String> _trees = new HashSet<>();
+
+}
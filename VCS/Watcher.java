@@ -0,0 +1,441 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/** The optional file-system watcher, and the commands' view of what it
+ *  saw.  The watcher, started by the watch command, holds a lock on
+ *  .gitlet/watch.lock while it runs and appends one line to the journal
+ *  .gitlet/watch-journal for every path that changes in the working
+ *  directory.  Commands that change the index append the paths they
+ *  touch to the same journal.  A command wanting the state of the
+ *  working directory first makes sure the watcher has caught up, by
+ *  creating a cookie file in .gitlet and waiting for the watcher to
+ *  journal it, and then reads the paths journaled since the state saved
+ *  in .gitlet/watch-state was computed: only those paths need to be
+ *  looked at again.  Whenever that cannot be trusted, because there is
+ *  no watcher, it has not answered in time, it lost events, or it has
+ *  restarted or started a new journal since the saved state, the whole
+ *  working directory is scanned instead.
+ *  @author Mudabbir Khan
+ */
+class Watcher {
+
+    /** File locked by the running watcher. */
+    static final File LOCK_FILE = Utils.join(".gitlet", "watch.lock");
+
+    /** Journal of changed paths. */
+    static final File JOURNAL = Utils.join(".gitlet", "watch-journal");
+
+    /** Saved state of the working directory. */
+    static final File STATE = Utils.join(".gitlet", "watch-state");
+
+    /** Prefix of the names of cookie files. */
+    private static final String COOKIE_PREFIX = "watch-cookie-";
+
+    /** Size in bytes past which the watcher starts a new journal. */
+    private static final long JOURNAL_LIMIT = 4 << 20;
+
+    /** Milliseconds the watcher waits for events before checking that
+     *  the repository is still there. */
+    private static final long POLL_INTERVAL = 1000;
+
+    /** Most bytes read when looking for the journal's epoch line. */
+    private static final int EPOCH_LIMIT = 64;
+
+    /** Milliseconds a command waits for the watcher to catch up. */
+    private static final long SYNC_TIMEOUT = 2000;
+
+    /** Runs the watcher on the current repository until the program is
+     *  stopped or the repository disappears. */
+    static void run() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(LOCK_FILE.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock();
+             WatchService service =
+                 FileSystems.getDefault().newWatchService()) {
+            if (lock == null) {
+                throw Utils.error("A watcher is already running.");
+            }
+            Path root = Paths.get(".");
+            Path repo = root.resolve(".gitlet");
+            HashMap<WatchKey, Path> dirs = new HashMap<>();
+            WatchKey repoKey = repo.register(service, ENTRY_CREATE);
+            StringBuilder lines = new StringBuilder();
+            register(service, root, root, dirs, lines);
+            startJournal();
+            while (repoKey.isValid() && Files.isDirectory(repo)) {
+                WatchKey key;
+                try {
+                    key = service.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException | ClosedWatchServiceException
+                         excp) {
+                    break;
+                }
+                lines.setLength(0);
+                for (; key != null; key = service.poll()) {
+                    if (key == repoKey) {
+                        cookies(key, lines);
+                    } else {
+                        changes(service, root, key, dirs, lines);
+                    }
+                    if (!key.reset()) {
+                        dirs.remove(key);
+                    }
+                }
+                if (!Files.isDirectory(repo)) {
+                    break;
+                } else if (JOURNAL.length() > JOURNAL_LIMIT) {
+                    startJournal();
+                }
+                append(lines);
+            }
+        }
+    }
+
+    /** Returns the watcher's report on the working directory since the
+     *  state was last saved, once the watcher has caught up, or null if no
+     *  watcher is running or it does not answer. */
+    static Watcher connect() {
+        if (!LOCK_FILE.isFile() || !isRunning()) {
+            return null;
+        }
+        Watcher result = new Watcher();
+        result.loadState();
+        File cookie = Utils.join(".gitlet", COOKIE_PREFIX
+                                 + ProcessHandle.current().pid() + "-"
+                                 + System.nanoTime());
+        try {
+            Utils.writeContents(cookie, "");
+            long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+            while (!result.readJournal(cookie.getName())) {
+                if (System.currentTimeMillis() > deadline) {
+                    return null;
+                }
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cookie.delete();
+        }
+        return result;
+    }
+
+    /** Notes in the journal that the index entries for PATHS have
+     *  changed, if a watcher is running.  Otherwise there is nothing to
+     *  note: a watcher started later begins a new journal, which is never
+     *  trusted against a state saved before it. */
+    static void touched(Collection<String> paths) {
+        if (paths.isEmpty() || !LOCK_FILE.isFile() || !isRunning()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String path : paths) {
+            lines.append("D ").append(path).append('\n');
+        }
+        append(lines);
+    }
+
+    /** Returns the paths that may have changed since the saved state, or
+     *  null if the whole working directory must be scanned. */
+    Set<String> dirty() {
+        return _rescan ? null : _dirty;
+    }
+
+    /** Returns the tracked files that were modified or deleted, mapped to
+     *  WorkTree.MODIFIED or WorkTree.DELETED, as of the saved state. */
+    TreeMap<String, String> changes() {
+        return _changes;
+    }
+
+    /** Returns the untracked files, as of the saved state. */
+    TreeSet<String> untracked() {
+        return _untracked;
+    }
+
+    /** Saves CHANGES and UNTRACKED as the state of the working directory
+     *  as of the journal read by connect. */
+    void save(TreeMap<String, String> changes, Collection<String> untracked) {
+        StringBuilder out = new StringBuilder();
+        out.append(_epoch).append(' ').append(_offset).append('\n');
+        for (String path : changes.keySet()) {
+            out.append(WorkTree.DELETED.equals(changes.get(path)) ? "D " : "M ")
+                .append(path).append('\n');
+        }
+        for (String path : untracked) {
+            out.append("? ").append(path).append('\n');
+        }
+        Utils.writeContentsAtomically(STATE, out.toString());
+    }
+
+    /** Returns true iff another process holds the lock of a watcher. */
+    private static boolean isRunning() {
+        try (FileChannel channel = FileChannel.open(LOCK_FILE.toPath(),
+                 StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Replaces the journal by an empty one with a new epoch. */
+    private static void startJournal() {
+        Utils.writeContentsAtomically(JOURNAL,
+                                      "E " + System.nanoTime() + "\n");
+    }
+
+    /** Appends LINES to the journal in a single write. */
+    private static void append(CharSequence lines) {
+        if (lines.length() == 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(JOURNAL.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buf = StandardCharsets.UTF_8.encode(lines.toString());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write watch journal: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /** Registers DIR, a directory under ROOT, and all its subdirectories
+     *  other than the repository with SERVICE, recording their keys in
+     *  DIRS, and adds a line to LINES for every file found. */
+    private static void register(WatchService service, Path root, Path dir,
+                                 HashMap<WatchKey, Path> dirs,
+                                 StringBuilder lines) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path sub,
+                    BasicFileAttributes attrs) throws IOException {
+                if (sub.endsWith(".gitlet")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dirs.put(sub.register(service, ENTRY_CREATE, ENTRY_DELETE,
+                                      ENTRY_MODIFY), sub);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) {
+                line(lines, root, file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Adds to LINES the changes reported by KEY, one of the directories
+     *  DIRS under ROOT watched by SERVICE, registering any directory
+     *  created. */
+    private static void changes(WatchService service, Path root, WatchKey key,
+                                HashMap<WatchKey, Path> dirs,
+                                StringBuilder lines) {
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                lines.append("O\n");
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (root.relativize(path).startsWith(".gitlet")) {
+                continue;
+            }
+            line(lines, root, path);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(service, root, path, dirs, lines);
+                } catch (IOException excp) {
+                    lines.append("O\n");
+                }
+            }
+        }
+    }
+
+    /** Adds to LINES an acknowledgement of each cookie created in the
+     *  repository, as reported by KEY. */
+    private static void cookies(WatchKey key, StringBuilder lines) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                lines.append("O\n");
+            } else if (event.context().toString().startsWith(COOKIE_PREFIX)) {
+                lines.append("C ").append(event.context()).append('\n');
+            }
+        }
+    }
+
+    /** Adds to LINES a line noting that PATH, under ROOT, changed. */
+    private static void line(StringBuilder lines, Path root, Path path) {
+        lines.append("D ")
+            .append(WorkTree.path(root.relativize(path).toString()))
+            .append('\n');
+    }
+
+    /** Reads the saved state, noting that a full scan is needed if there
+     *  is none. */
+    private void loadState() {
+        _rescan = true;
+        if (!STATE.isFile()) {
+            return;
+        }
+        String[] lines = Utils.readContentsAsString(STATE).split("\n");
+        String[] header = lines[0].split(" ");
+        if (header.length != 2) {
+            return;
+        }
+        _epoch = header[0];
+        _offset = Long.parseLong(header[1]);
+        for (int i = 1; i < lines.length; i += 1) {
+            String path = lines[i].substring(2);
+            switch (lines[i].charAt(0)) {
+            case 'M':
+                _changes.put(path, WorkTree.MODIFIED);
+                break;
+            case 'D':
+                _changes.put(path, WorkTree.DELETED);
+                break;
+            default:
+                _untracked.add(path);
+                break;
+            }
+        }
+        _rescan = false;
+    }
+
+    /** Reads the journal written since the saved state, or since the last
+     *  call, adding the paths found to the dirty paths.  Only the epoch
+     *  line and the lines added since are read.  Starts from the
+     *  beginning, and notes that a full scan is needed, if the journal is
+     *  not the one the state was saved from.  Returns true iff the cookie
+     *  named COOKIE has been acknowledged. */
+    private boolean readJournal(String cookie) {
+        if (!JOURNAL.isFile()) {
+            return false;
+        }
+        byte[] data;
+        try (FileChannel in = FileChannel.open(JOURNAL.toPath(),
+                 StandardOpenOption.READ)) {
+            byte[] head = read(in, 0, EPOCH_LIMIT);
+            int eol = indexOf(head, 0);
+            if (eol < 0) {
+                return false;
+            }
+            String epoch = new String(head, 2, Math.max(0, eol - 2),
+                                      StandardCharsets.UTF_8);
+            if (!epoch.equals(_epoch) || _offset > in.size()) {
+                _rescan = true;
+                _epoch = epoch;
+                _offset = eol + 1;
+            }
+            data = read(in, _offset, in.size() - _offset);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read watch journal: %s",
+                              excp.getMessage());
+        }
+        boolean acknowledged = false;
+        int start = 0;
+        for (int end = indexOf(data, start); end >= 0;
+             end = indexOf(data, start)) {
+            String line = new String(data, start, end - start,
+                                     StandardCharsets.UTF_8);
+            start = end + 1;
+            if (line.startsWith("D ")) {
+                _dirty.add(line.substring(2));
+            } else if (line.equals("O")) {
+                _rescan = true;
+            } else if (line.equals("C " + cookie)) {
+                acknowledged = true;
+            }
+        }
+        _offset += start;
+        return acknowledged;
+    }
+
+    /** Returns the bytes of IN from POSITION, at most LENGTH of them. */
+    private static byte[] read(FileChannel in, long position, long length)
+        throws IOException {
+        long size = Math.max(0, Math.min(length, in.size() - position));
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining()) {
+            if (in.read(buf, position + buf.position()) < 0) {
+                break;
+            }
+        }
+        byte[] result = new byte[buf.position()];
+        buf.flip();
+        buf.get(result);
+        return result;
+    }
+
+    /** Returns the index of the first newline in DATA at or after START,
+     *  or -1. */
+    private static int indexOf(byte[] data, int start) {
+        for (int i = start; i < data.length; i += 1) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Epoch of the journal the state was saved from, or null. */
+    private String _epoch;
+
+    /** Offset in the journal up to which it has been read. */
+    private long _offset;
+
+    /** True iff the whole working directory must be scanned. */
+    private boolean _rescan;
+
+    /** Paths journaled since the saved state. */
+    private final HashSet<String> _dirty = new HashSet<>();
+
+    /** Changed tracked files in the saved state. */
+    private final TreeMap<String, String> _changes = new TreeMap<>();
+
+    /** Untracked files in the saved state. */
+    private final TreeSet<String> _untracked = new TreeSet<>();
+
+}
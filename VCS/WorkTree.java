@@ -0,0 +1,367 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** The working directory, subdirectories included, and its comparison
+ *  with the index.  A file whose size and modification time still match
+ *  those recorded in its index entry is taken to be unchanged without
+ *  reading it.  A file of a different size has certainly changed.  Only
+ *  the remaining files, whose time differs or whose entry was written too
+ *  close to the index itself to be trusted (racily clean), are hashed,
+ *  and all of the checking is spread over a ForkJoinPool.
+ *  @author Mudabbir Khan
+ */
+class WorkTree {
+
+    /** Description of a file changed since it was staged or checked
+     *  out. */
+    static final String MODIFIED = "modified";
+
+    /** Description of a file deleted since it was staged or checked out. */
+    static final String DELETED = "deleted";
+
+    /** Largest number of files one task checks without splitting. */
+    private static final int BATCH = 64;
+
+    /** The differences between the working directory and the index. */
+    static class Snapshot {
+
+        /** The differences between the working directory and INDEX: the
+         *  tracked files CHANGES, mapped to MODIFIED or DELETED, and the
+         *  files UNTRACKED. */
+        Snapshot(Index index, TreeMap<String, String> changes,
+                 TreeSet<String> untracked) {
+            _index = index;
+            _changes = changes;
+            _untracked = untracked;
+        }
+
+        /** Returns the tracked files whose working copies differ from
+         *  their staged or committed versions, each mapped to MODIFIED or
+         *  DELETED, in order of name. */
+        TreeMap<String, String> changes() {
+            return _changes;
+        }
+
+        /** Returns the files that the index neither tracks nor has staged,
+         *  including those staged for removal, in order. */
+        TreeSet<String> untracked() {
+            return _untracked;
+        }
+
+        /** Returns the paths of all files in the working directory, in
+         *  order. */
+        TreeSet<String> files() {
+            TreeSet<String> result = new TreeSet<>(_untracked);
+            for (Index.Entry entry : _index.entries()) {
+                if (!entry.isRemoved()
+                    && !DELETED.equals(_changes.get(entry.path()))) {
+                    result.add(entry.path());
+                }
+            }
+            return result;
+        }
+
+        /** The index compared. */
+        private final Index _index;
+
+        /** The changed tracked files. */
+        private final TreeMap<String, String> _changes;
+
+        /** The untracked files. */
+        private final TreeSet<String> _untracked;
+    }
+
+    /** Returns the differences between the working directory and INDEX.
+     *  When a watcher is running and can say which paths changed since
+     *  the last time, only those paths are examined; otherwise every
+     *  tracked file is checked and the whole working directory listed. */
+    static Snapshot snapshot(Index index) {
+        Watcher watcher = Watcher.connect();
+        Set<String> dirty = watcher == null ? null : watcher.dirty();
+        TreeMap<String, String> changes;
+        TreeSet<String> untracked;
+        if (dirty == null) {
+            List<Index.Entry> entries = new ArrayList<>();
+            for (Index.Entry entry : index.entries()) {
+                if (!entry.isRemoved()) {
+                    entries.add(entry);
+                }
+            }
+            changes = changes(index, entries);
+            untracked = new TreeSet<>(untracked(index, files()));
+        } else {
+            changes = watcher.changes();
+            untracked = watcher.untracked();
+            TreeSet<String> affected = affected(index, dirty, untracked);
+            changes.keySet().removeAll(affected);
+            untracked.removeAll(affected);
+            List<Index.Entry> entries = new ArrayList<>();
+            for (String path : affected) {
+                Index.Entry entry = index.get(path);
+                if (entry != null && !entry.isRemoved()) {
+                    entries.add(entry);
+                } else if (new File(path).isFile()) {
+                    untracked.add(path);
+                }
+            }
+            changes.putAll(changes(index, entries));
+        }
+        if (watcher != null) {
+            watcher.save(changes, untracked);
+        }
+        return new Snapshot(index, changes, untracked);
+    }
+
+    /** Returns the paths whose state may have changed given that the paths
+     *  DIRTY did: those paths, and, for any that is or was a directory,
+     *  the files below it in the working directory, in INDEX, or among
+     *  the files UNTRACKED. */
+    private static TreeSet<String> affected(Index index, Set<String> dirty,
+                                            TreeSet<String> untracked) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String path : dirty) {
+            result.add(path);
+            String first = path + "/";
+            String last = first + Character.MAX_VALUE;
+            result.addAll(index.entryMap().subMap(first, last).keySet());
+            result.addAll(untracked.subSet(first, last));
+            if (new File(path).isDirectory()) {
+                result.addAll(files(Paths.get(".").resolve(path)));
+            }
+        }
+        return result;
+    }
+
+    /** Returns those of the tracked files ENTRIES of INDEX whose working
+     *  copies differ from their staged or committed versions, each mapped
+     *  to MODIFIED or DELETED, in order of name.  Files found unchanged by
+     *  hashing get their recorded size and time refreshed in INDEX, which
+     *  is saved, so that they need not be hashed again. */
+    private static TreeMap<String, String> changes(Index index,
+                                                   List<Index.Entry> entries) {
+        Check[] checks = new Check[entries.size()];
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Compare(index, entries, checks, 0,
+                                    entries.size()));
+        } finally {
+            pool.shutdown();
+        }
+        TreeMap<String, String> result = new TreeMap<>();
+        boolean refreshed = false;
+        for (int i = 0; i < checks.length; i += 1) {
+            Check check = checks[i];
+            if (check.change != null) {
+                result.put(entries.get(i).path(), check.change);
+            } else if (check.hashed) {
+                index.refresh(entries.get(i).path(), check.size,
+                              check.mtime);
+                refreshed = true;
+            }
+        }
+        if (refreshed) {
+            index.save();
+        }
+        return result;
+    }
+
+    /** Returns the files among FILES that INDEX neither tracks nor has
+     *  staged, including those staged for removal, in the order given. */
+    static List<String> untracked(Index index, List<String> files) {
+        List<String> result = new ArrayList<>();
+        if (files != null) {
+            for (String name : files) {
+                Index.Entry entry = index.get(name);
+                if (entry == null || entry.isRemoved()) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the paths of all files in the working directory and its
+     *  subdirectories, other than the repository itself, in order. */
+    static List<String> files() {
+        return files(Paths.get("."));
+    }
+
+    /** Returns the paths of all files in the directory START, a path
+     *  starting with ".", and its subdirectories, other than the
+     *  repository itself, in order. */
+    private static List<String> files(Path start) {
+        List<String> result = new ArrayList<>();
+        Path root = Paths.get(".");
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir,
+                        BasicFileAttributes attrs) {
+                    return dir.endsWith(".gitlet")
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        result.add(path(root.relativize(file).toString()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw Utils.error("Cannot list working directory: %s",
+                              excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the path by which the repository knows the file NAME, given
+     *  on the command line: relative to the working directory, without
+     *  redundant components, and with '/' between components.  A NAME
+     *  that is absolute or leads out of the working directory, or into
+     *  the repository, is an error. */
+    static String path(String name) {
+        Path path = Paths.get(name).normalize();
+        if (path.isAbsolute() || path.startsWith("..")) {
+            throw Utils.error("%s is outside the working directory.", name);
+        } else if (path.startsWith(".gitlet")) {
+            throw Utils.error("%s is inside the repository.", name);
+        }
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Deletes the file at PATH, and then any directories left empty
+     *  between it and the working directory, which is never deleted.
+     *  PATH must lie within the working directory. */
+    static void delete(String path) {
+        File file = new File(path(path));
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && !dir.getPath().isEmpty() && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns the id that the contents of FILE would have as a version
+     *  of the file named NAME, reading FILE through a fixed-size buffer. */
+    static String hash(String name, File file) throws IOException {
+        MessageDigest md = Commit.blobDigest(name);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+            }
+        }
+        return Utils.toHex(md.digest(), 0);
+    }
+
+    /** The outcome of checking one file. */
+    private static class Check {
+        /** MODIFIED, DELETED, or null if the file is unchanged. */
+        private String change;
+
+        /** True iff the file had to be hashed. */
+        private boolean hashed;
+
+        /** The file's size when checked. */
+        private long size;
+
+        /** The file's modification time when checked. */
+        private long mtime;
+    }
+
+    /** Checks a range of index entries against their working copies. */
+    private static class Compare extends RecursiveAction {
+
+        /** Checks ENTRIES[LO .. HI) of INDEX, storing the outcomes in the
+         *  same positions of CHECKS. */
+        Compare(Index index, List<Index.Entry> entries, Check[] checks,
+                int lo, int hi) {
+            _index = index;
+            _entries = entries;
+            _checks = checks;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > BATCH) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Compare(_index, _entries, _checks, _lo, mid),
+                          new Compare(_index, _entries, _checks, mid, _hi));
+                return;
+            }
+            for (int i = _lo; i < _hi; i += 1) {
+                _checks[i] = check(_entries.get(i));
+            }
+        }
+
+        /** Returns the outcome of checking ENTRY. */
+        private Check check(Index.Entry entry) {
+            Check result = new Check();
+            File file = new File(entry.path());
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    result.change = DELETED;
+                    return result;
+                }
+                result.size = attrs.size();
+                result.mtime = attrs.lastModifiedTime().toMillis();
+                if (result.size != entry.size() && entry.mtime() != 0) {
+                    result.change = MODIFIED;
+                } else if (result.mtime != entry.mtime()
+                           || _index.isRacy(entry)) {
+                    result.hashed = true;
+                    if (!hash(entry.path(), file).equals(entry.id())) {
+                        result.change = MODIFIED;
+                    }
+                }
+            } catch (NoSuchFileException excp) {
+                result.change = DELETED;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read %s: %s", file,
+                                  excp.getMessage());
+            }
+            return result;
+        }
+
+        /** The index being checked. */
+        private final Index _index;
+
+        /** The entries being checked. */
+        private final List<Index.Entry> _entries;
+
+        /** Where to store the outcomes. */
+        private final Check[] _checks;
+
+        /** Bounds of the range of entries to check. */
+        private final int _lo, _hi;
+    }
+
+}